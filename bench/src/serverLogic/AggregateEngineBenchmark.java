@@ -0,0 +1,79 @@
+package serverLogic;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Latency of processed history reads answered from the AggregateEngine rollups against a scan of the raw points,
+ * over a history of one point per 100 ms: hourly values over a day, at a random offset not aligned on the buckets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx1g"})
+public class AggregateEngineBenchmark {
+
+    private static final long PERIOD_MILLIS = 100;
+    private static final long INTERVAL_MILLIS = 3_600_000;
+    private static final long RANGE_MILLIS = 24 * INTERVAL_MILLIS;
+
+    @Param({"10000000"})
+    public long points;
+
+    @Param({"AVERAGE", "MAXIMUM", "COUNT"})
+    public AggregateEngine.Aggregate aggregate;
+
+    private Path directory;
+    private AggregateEngine engine;
+    private long firstTimestamp;
+    private final double[] results = new double[(int) (RANGE_MILLIS / INTERVAL_MILLIS) + 1];
+
+    @Setup(Level.Trial)
+    public void setup () throws IOException {
+        directory = Files.createTempDirectory("aggregate-bench");
+        engine = new AggregateEngine(new TimeSeriesStore(directory, TimeSeriesStore.DEFAULT_SEGMENT_BYTES),
+                                     AggregateEngine.DEFAULT_WIDTHS_MILLIS);
+        firstTimestamp = System.currentTimeMillis() - points * PERIOD_MILLIS;
+        double value = 50.0;
+        for (long i = 0; i < points; i++) {
+            value += Math.round(ThreadLocalRandom.current().nextGaussian() * 10) / 100.0;
+            engine.append(firstTimestamp + i * PERIOD_MILLIS, value);
+        }
+        engine.getStore().flush();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown () throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private long randomStart (){
+        long span = Math.max(1, points * PERIOD_MILLIS - RANGE_MILLIS);
+        return firstTimestamp + ThreadLocalRandom.current().nextLong(span);
+    }
+
+    @Benchmark
+    public double[] rollups (){
+        long from = randomStart();
+        engine.aggregate(aggregate, from, from + RANGE_MILLIS, INTERVAL_MILLIS, results);
+        return results;
+    }
+
+    @Benchmark
+    public double[] rawScan (){
+        long from = randomStart();
+        engine.aggregateByScan(aggregate, from, from + RANGE_MILLIS, INTERVAL_MILLIS, results);
+        return results;
+    }
+}
@@ -0,0 +1,49 @@
+package serverLogic;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the AnalogValue write paths: the direct setAnalogValue and the sample ingestion stage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalogWriteBenchmark {
+
+    private SampleIngestion ingestion;
+    private int analogValueTag;
+
+    @Setup(Level.Trial)
+    public void setup (BenchmarkServer benchmarkServer){
+        ingestion = new SampleIngestion("benchmark", benchmarkServer.namespace).start();
+        analogValueTag = benchmarkServer.namespace.getAnalogValueTag();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown (){
+        ingestion.stop();
+    }
+
+    @Benchmark
+    public void setAnalogValue (BenchmarkServer benchmarkServer){
+        benchmarkServer.namespace.setAnalogValue(ThreadLocalRandom.current().nextDouble(0.0, 100.0));
+    }
+
+    @Benchmark
+    public Double getAnalogValue (BenchmarkServer benchmarkServer){
+        return benchmarkServer.namespace.getAnalogValue();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean publishSample (){
+        // Dropped samples are counted by the ingestion, the return value tells the backpressure
+        return ingestion.publish(analogValueTag, ThreadLocalRandom.current().nextDouble(0.0, 100.0));
+    }
+}
@@ -0,0 +1,24 @@
+package serverLogic;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs every benchmark of the suite with the GC profiler, so that allocation rates are reported with the times.
+ * The bench sources need jmh-core and jmh-generator-annprocess (as annotation processor) on top of the server
+ * classpath. An optional argument restricts the run to the benchmarks matching it, e.g. "NamespaceRead".
+ */
+public class BenchmarkRunner {
+
+    public static void main (String[] args) throws RunnerException {
+        String include = args.length > 0 ? "serverLogic.*" + args[0] + ".*" : "serverLogic.*Benchmark";
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,43 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.sdk.server.OpcUaServer;
+import org.eclipse.milo.opcua.sdk.server.nodes.AttributeContext;
+import org.eclipse.milo.opcua.sdk.server.nodes.UaVariableNode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A server built like the demo one, with its namespace started but without binding any endpoint.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkServer {
+
+    RedundantServer redundantServer;
+    ExampleNamespace namespace;
+    OpcUaServer server;
+    AttributeContext internalContext;
+
+    @Setup(Level.Trial)
+    public void setup () throws Exception {
+        // Keep the per-call INFO logging of the server out of the measurements
+        java.util.logging.Logger.getLogger("").setLevel(java.util.logging.Level.WARNING);
+
+        redundantServer = new RedundantServerSet(1).getCurrentServer();
+        namespace = redundantServer.getNamespace();
+        server = redundantServer.getServer();
+        internalContext = new AttributeContext(server);
+    }
+
+    NodeId nodeId (String path){
+        return new NodeId(namespace.getNamespaceIndex(), "HelloWorld/" + path);
+    }
+
+    UaVariableNode variableNode (String path){
+        return (UaVariableNode) server.getAddressSpaceManager()
+                .getManagedNode(nodeId(path))
+                .orElseThrow(() -> new IllegalArgumentException("no node at " + path));
+    }
+}
@@ -0,0 +1,110 @@
+package serverLogic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.eclipse.milo.examples.server.types.CustomDataType;
+import org.eclipse.milo.examples.server.types.CustomDataTypeArray;
+import org.eclipse.milo.opcua.stack.core.serialization.OpcUaBinaryStreamDecoder;
+import org.eclipse.milo.opcua.stack.core.serialization.OpcUaBinaryStreamEncoder;
+import org.eclipse.milo.opcua.stack.core.serialization.SerializationContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+/**
+ * Binary encoding and decoding of CustomDataType arrays, element by element with the generic codec and in bulk
+ * with CustomDataTypeArray.Codec. Both produce the same bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomDataTypeCodecBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int length;
+
+    private final CustomDataType.Codec codec = new CustomDataType.Codec();
+    private SerializationContext context;
+    private CustomDataType[] values;
+    private ByteBuf buffer;
+    private OpcUaBinaryStreamEncoder encoder;
+    private OpcUaBinaryStreamDecoder decoder;
+    private final CustomDataTypeArray.Codec bulkCodec = new CustomDataTypeArray.Codec();
+    private CustomDataTypeArray columns;
+    private CustomDataTypeArray decodedColumns;
+
+    @Setup(Level.Trial)
+    public void setup (BenchmarkServer benchmarkServer){
+        context = benchmarkServer.server.getSerializationContext();
+        values = new CustomDataType[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = new CustomDataType("foo" + i, uint(i), i % 2 == 0);
+        }
+        buffer = Unpooled.buffer(length * 32);
+        encoder = new OpcUaBinaryStreamEncoder(context);
+        decoder = new OpcUaBinaryStreamDecoder(context);
+        columns = CustomDataTypeArray.of(values);
+        decodedColumns = new CustomDataTypeArray();
+        genericEncode();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown (){
+        buffer.release();
+    }
+
+    @Benchmark
+    public int genericEncode (){
+        buffer.clear();
+        encoder.setBuffer(buffer);
+        encoder.writeInt32(null, length);
+        for (CustomDataType value : values) {
+            codec.encode(context, encoder, value);
+        }
+        return buffer.writerIndex();
+    }
+
+    @Benchmark
+    public CustomDataType[] genericDecode (){
+        // The buffer keeps the array encoded during setup, rewind it for every decode
+        buffer.readerIndex(0);
+        decoder.setBuffer(buffer);
+        decoder.readInt32(null);
+        CustomDataType[] decoded = new CustomDataType[length];
+        for (int i = 0; i < length; i++) {
+            decoded[i] = codec.decode(context, decoder);
+        }
+        return decoded;
+    }
+
+    @Benchmark
+    public int bulkEncodeObjects (){
+        buffer.clear();
+        bulkCodec.encode(buffer, values);
+        return buffer.writerIndex();
+    }
+
+    @Benchmark
+    public CustomDataType[] bulkDecodeObjects (){
+        buffer.readerIndex(0);
+        return bulkCodec.decode(buffer);
+    }
+
+    @Benchmark
+    public int bulkEncodeColumns (){
+        buffer.clear();
+        bulkCodec.encode(buffer, columns);
+        return buffer.writerIndex();
+    }
+
+    @Benchmark
+    public CustomDataTypeArray bulkDecodeColumns (){
+        buffer.readerIndex(0);
+        return bulkCodec.decode(buffer, decodedColumns);
+    }
+}
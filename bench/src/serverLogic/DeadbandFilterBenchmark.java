@@ -0,0 +1,61 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.stack.core.types.structured.Range;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Notification rate left by a percent deadband over the AnalogValue EURange (0 to 100), for a simulated noisy
+ * signal: a slow sine over the range plus gaussian noise. The notified and sampled counters give the reduction,
+ * the score the cost of the filter per sample.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeadbandFilterBenchmark {
+
+    private static final Range EU_RANGE = new Range(0.0, 100.0);
+    private static final int SIGNAL_SAMPLES = 1 << 16;
+
+    @Param({"0.0", "0.5", "1.0", "2.0"})
+    public double percent;
+
+    @Param({"0.2", "1.0"})
+    public double noise;
+
+    private DeadbandFilter filter;
+    private final double[] signal = new double[SIGNAL_SAMPLES];
+    private int next;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Notifications {
+        public long sampled;
+        public long notified;
+    }
+
+    @Setup(Level.Trial)
+    public void setup (){
+        filter = DeadbandFilter.percent(percent, EU_RANGE);
+        Random random = new Random(42);
+        for (int i = 0; i < SIGNAL_SAMPLES; i++) {
+            double value = 50 + 40 * Math.sin(2 * Math.PI * i / SIGNAL_SAMPLES) + random.nextGaussian() * noise;
+            signal[i] = Math.max(0.0, Math.min(100.0, value));
+        }
+    }
+
+    @Benchmark
+    public boolean sample (Notifications notifications){
+        double value = signal[next];
+        next = (next + 1) & (SIGNAL_SAMPLES - 1);
+        notifications.sampled++;
+        boolean notify = filter.test(value, 0);
+        if (notify) notifications.notified++;
+        return notify;
+    }
+}
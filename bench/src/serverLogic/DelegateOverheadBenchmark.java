@@ -0,0 +1,74 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.sdk.server.nodes.UaVariableNode;
+import org.eclipse.milo.opcua.sdk.server.nodes.delegates.AttributeDelegate;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the delegates stacked on the ExampleNamespace nodes, compared with the default delegate.
+ * The context has no session, so this is the path taken by the server's own reads (e.g. sampling); the cost of an
+ * external access on top of it is measured by auditRecordRead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DelegateOverheadBenchmark {
+
+    private UaVariableNode node;
+    private AttributeDelegate defaultDelegate;
+    private AttributeDelegate valueLoggingDelegate;
+    private AttributeDelegate accessAuditDelegate;
+    private AttributeDelegate instrumentingDelegate;
+    private AccessAuditor auditor;
+    private DataValue value;
+
+    @Setup(Level.Trial)
+    public void setup (BenchmarkServer benchmarkServer) throws Exception {
+        // A node keeping its value itself, so that only the delegates are measured
+        node = benchmarkServer.variableNode("ScalarTypes/String");
+        defaultDelegate = new AttributeDelegate() {};
+        valueLoggingDelegate = new ValueLoggingDelegate();
+        auditor = new AccessAuditor(1000, TimeUnit.MINUTES.toMillis(1));
+        accessAuditDelegate = new AccessAuditDelegate(auditor);
+        instrumentingDelegate = new InstrumentingDelegate(new NodeMetrics(node.getNodeId()),
+                                                          new InstrumentingDelegate.Switch(true),
+                                                          new AccessAuditDelegate(auditor));
+        value = defaultDelegate.getValue(benchmarkServer.internalContext, node);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown (){
+        auditor.shutdown();
+    }
+
+    @Benchmark
+    public DataValue defaultDelegate (BenchmarkServer benchmarkServer) throws Exception {
+        return defaultDelegate.getValue(benchmarkServer.internalContext, node);
+    }
+
+    @Benchmark
+    public DataValue valueLoggingDelegate (BenchmarkServer benchmarkServer) throws Exception {
+        return valueLoggingDelegate.getValue(benchmarkServer.internalContext, node);
+    }
+
+    @Benchmark
+    public DataValue accessAuditDelegate (BenchmarkServer benchmarkServer) throws Exception {
+        return accessAuditDelegate.getValue(benchmarkServer.internalContext, node);
+    }
+
+    @Benchmark
+    public DataValue instrumentingDelegate (BenchmarkServer benchmarkServer) throws Exception {
+        return instrumentingDelegate.getValue(benchmarkServer.internalContext, node);
+    }
+
+    @Benchmark
+    public void auditRecordRead (){
+        auditor.recordRead(node.getNodeId(), value);
+    }
+}
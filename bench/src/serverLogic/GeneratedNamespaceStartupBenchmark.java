@@ -0,0 +1,87 @@
+package serverLogic;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and starting the GeneratedNamespace in lazy and eager mode. The startup score is the time to construct
+ * and start it, its allocation is given by the GC profiler (gc.alloc.rate.norm). The retained benchmark builds it
+ * the same way and reports in its retainedKB counter the heap still held once started and collected, and in
+ * directKB the direct buffers of the value store, both added up over the measurement iterations; its own time
+ * includes the collections and isn't meant to be read. G1 is forced: the serial collector, which the JVM picks on
+ * a single CPU, under-reports the heap used after a collection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = {"-Xmx2g", "-XX:+UseG1GC"})
+public class GeneratedNamespaceStartupBenchmark {
+
+    @Param({"10000", "100000"})
+    public int tags;
+
+    @Param({"true", "false"})
+    public boolean lazy;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final BufferPoolMXBean direct = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+            .filter(pool -> "direct".equals(pool.getName()))
+            .findFirst()
+            .orElseThrow(IllegalStateException::new);
+    private GeneratedNamespace namespace;
+    private long baselineBytes;
+    private long baselineDirectBytes;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Heap {
+        public long retainedKB;
+        public long directKB;
+    }
+
+    @Setup(Level.Invocation)
+    public void collect (){
+        // Leave nothing of the previous invocation behind to be collected, nor counted, during this one
+        baselineBytes = usedAfterGc();
+        baselineDirectBytes = direct.getMemoryUsed();
+    }
+
+    @TearDown(Level.Invocation)
+    public void shutdown (){
+        if (namespace != null) namespace.shutdown();
+        namespace = null;
+    }
+
+    private GeneratedNamespace build (BenchmarkServer benchmarkServer){
+        GeneratedNamespace.Config config = new GeneratedNamespace.Config().setTagCount(tags).setLazy(lazy);
+        namespace = new GeneratedNamespace(benchmarkServer.server, config);
+        namespace.startup();
+        return namespace;
+    }
+
+    @Benchmark
+    public GeneratedNamespace startup (BenchmarkServer benchmarkServer){
+        return build(benchmarkServer);
+    }
+
+    @Benchmark
+    public GeneratedNamespace retained (BenchmarkServer benchmarkServer, Heap heap){
+        GeneratedNamespace built = build(benchmarkServer);
+        heap.retainedKB += (usedAfterGc() - baselineBytes) / 1024;
+        heap.directKB += (direct.getMemoryUsed() - baselineDirectBytes) / 1024;
+        return built;
+    }
+
+    private long usedAfterGc (){
+        // Twice, so that what the first one only finalized or queued is gone too
+        System.gc();
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,103 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.sdk.server.api.DataItem;
+import org.eclipse.milo.opcua.sdk.server.items.MonitoredDataItem;
+import org.eclipse.milo.opcua.sdk.server.util.SubscriptionModel;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.MonitoringMode;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+/**
+ * Process CPU spent while data items monitor a node that doesn't change, with the PushSubscriptionModel of the
+ * namespace against Milo's SubscriptionModel sampling them. Each invocation idles for one second and the cpuMicros
+ * counter gives the CPU the whole process used meanwhile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class IdleMonitoredItemsBenchmark {
+
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    @Param({"push", "sampled"})
+    public String model;
+
+    @Param({"10000"})
+    public int items;
+
+    @Param({"100.0"})
+    public double samplingInterval;
+
+    private final List<DataItem> dataItems = new ArrayList<>();
+    private SubscriptionModel subscriptionModel;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Cpu {
+        public long cpuMicros;
+    }
+
+    @Setup(Level.Trial)
+    public void setup (BenchmarkServer benchmarkServer) throws Exception {
+        ReadValueId readValueId = new ReadValueId(benchmarkServer.nodeId("ScalarTypes/Double"),
+                                                  AttributeId.Value.uid(), null, QualifiedName.NULL_VALUE);
+        for (int i = 0; i < items; i++) {
+            dataItems.add(new MonitoredDataItem(
+                benchmarkServer.server,
+                null,
+                uint(i + 1),
+                uint(1),
+                readValueId,
+                MonitoringMode.Reporting,
+                TimestampsToReturn.Both,
+                uint(i + 1),
+                samplingInterval,
+                null,
+                uint(1),
+                true
+            ));
+        }
+        if ("push".equals(model)) {
+            benchmarkServer.namespace.onDataItemsCreated(dataItems);
+        } else {
+            subscriptionModel = new SubscriptionModel(benchmarkServer.server, benchmarkServer.namespace);
+            subscriptionModel.onDataItemsCreated(dataItems);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown (BenchmarkServer benchmarkServer){
+        if (subscriptionModel != null) subscriptionModel.onDataItemsDeleted(dataItems);
+        else benchmarkServer.namespace.onDataItemsDeleted(dataItems);
+        dataItems.clear();
+    }
+
+    @Benchmark
+    public void idle (Cpu cpu){
+        long start = processCpuNanos();
+        long deadline = System.nanoTime() + IDLE_NANOS;
+        for (long left = IDLE_NANOS; left > 0; left = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(left);
+        }
+        cpu.cpuMicros += (processCpuNanos() - start) / 1000;
+    }
+
+    private static long processCpuNanos (){
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+}
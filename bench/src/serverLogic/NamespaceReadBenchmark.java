@@ -0,0 +1,48 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.sdk.server.nodes.UaVariableNode;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Value reads of the ExampleNamespace nodes through their whole delegate chain, the way the Read service does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NamespaceReadBenchmark {
+
+    @Param({
+        "ScalarTypes/Double",
+        "ScalarTypes/String",
+        "ArrayTypes/DoubleArray",
+        "Dynamic/Double",
+        "DataAccess/AnalogValue"
+    })
+    public String path;
+
+    private UaVariableNode node;
+
+    @Setup(Level.Trial)
+    public void setup (BenchmarkServer benchmarkServer){
+        node = benchmarkServer.variableNode(path);
+    }
+
+    @Benchmark
+    public DataValue readValue (BenchmarkServer benchmarkServer) throws Exception {
+        return node.readAttribute(
+            benchmarkServer.internalContext,
+            AttributeId.Value.uid(),
+            TimestampsToReturn.Both,
+            null,
+            null
+        );
+    }
+}
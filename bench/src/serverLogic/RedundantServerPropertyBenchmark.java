@@ -0,0 +1,40 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.sdk.server.model.nodes.objects.TransparentRedundancyNode;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedundantServer property accessors with readers and a writer contending on its read/write lock.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedundantServerPropertyBenchmark {
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public String getProperty (BenchmarkServer benchmarkServer){
+        return benchmarkServer.redundantServer.getProperty(
+                Identifiers.Server_ServerRedundancy, TransparentRedundancyNode.CURRENT_SERVER_ID);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public RedundantServer setProperty (BenchmarkServer benchmarkServer){
+        return benchmarkServer.redundantServer.setCurrentRedundantServerId("Server0");
+    }
+
+    @Benchmark
+    public String uncontendedGetProperty (BenchmarkServer benchmarkServer){
+        return benchmarkServer.redundantServer.getProperty(
+                Identifiers.Server_ServerRedundancy, TransparentRedundancyNode.CURRENT_SERVER_ID);
+    }
+}
@@ -0,0 +1,97 @@
+package serverLogic;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Append throughput and range query latency of the AnalogValue history, over a store pre-filled with one point per
+ * 100 ms. The default size keeps the setup short, run with -p points=1000000000 for the billion points sizing.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx1g"})
+public class TimeSeriesStoreBenchmark {
+
+    private static final long PERIOD_MILLIS = 100;
+    // One hour, 36000 points
+    private static final long QUERY_SPAN_MILLIS = 3_600_000;
+
+    @Param({"10000000"})
+    public long points;
+
+    private Path directory;
+    private TimeSeriesStore store;
+    private long firstTimestamp;
+    private long nextTimestamp;
+    private double nextValue;
+
+    @Setup(Level.Trial)
+    public void setup () throws IOException {
+        directory = Files.createTempDirectory("history-bench");
+        store = new TimeSeriesStore(directory, TimeSeriesStore.DEFAULT_SEGMENT_BYTES);
+        firstTimestamp = System.currentTimeMillis() - points * PERIOD_MILLIS;
+        nextTimestamp = firstTimestamp;
+        nextValue = 50.0;
+        for (long i = 0; i < points; i++) {
+            appendNext();
+        }
+        store.flush();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown () throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private boolean appendNext (){
+        // Random walk quantized like a sensor reading, so that values compress as real ones would
+        nextValue += Math.round(ThreadLocalRandom.current().nextGaussian() * 10) / 100.0;
+        boolean appended = store.append(nextTimestamp, nextValue);
+        nextTimestamp += PERIOD_MILLIS;
+        return appended;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public boolean append (){
+        return appendNext();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double queryHour (){
+        long span = Math.max(1, nextTimestamp - firstTimestamp - QUERY_SPAN_MILLIS);
+        long from = firstTimestamp + ThreadLocalRandom.current().nextLong(span);
+        double[] sum = {0};
+        store.query(from, from + QUERY_SPAN_MILLIS, false, (time, value) -> {
+            sum[0] += value;
+            return true;
+        });
+        return sum[0];
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double latestHundredReverse (){
+        double[] sum = {0};
+        int[] left = {100};
+        store.query(Long.MIN_VALUE, Long.MAX_VALUE, true, (time, value) -> {
+            sum[0] += value;
+            return --left[0] > 0;
+        });
+        return sum[0];
+    }
+}
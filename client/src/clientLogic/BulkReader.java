@@ -0,0 +1,266 @@
+package clientLogic;
+
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import serverLogic.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads the values of many nodes over one session. The nodes are split in Read requests of at most maxNodesPerRead
+ * ReadValueIds, and up to maxInFlight of them are pipelined: a request is sent as soon as one of the window
+ * completes, without waiting for the whole batch.
+ * Values land in a Result made of primitive arrays, which can be reused from a read to the next.
+ */
+public class BulkReader {
+
+    public static final int DEFAULT_MAX_NODES_PER_READ = 1000;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    private static Logger logger = LoggerFactory.getLogger(BulkReader.class);
+
+    private final OpcUaClient client;
+    private final int maxNodesPerRead;
+    private final int maxInFlight;
+
+    private final LongAdder nodesRead = new LongAdder();
+    private final LongAdder requestsSent = new LongAdder();
+    private final LatencyHistogram requestLatency = new LatencyHistogram();
+
+    /**
+     * Nodes split in requests once, to be read many times.
+     */
+    public static class Plan {
+        private final List<List<ReadValueId>> requests;
+        // Position in the Result of the first node of each request
+        private final int[] offsets;
+        private final int size;
+
+        private Plan (List<List<ReadValueId>> requests, int[] offsets, int size){
+            this.requests = requests;
+            this.offsets = offsets;
+            this.size = size;
+        }
+
+        public int size (){
+            return size;
+        }
+
+        public int getRequestCount (){
+            return requests.size();
+        }
+    }
+
+    /**
+     * Values of a read, by position of the node in the plan. Numeric and boolean values are stored as doubles,
+     * other values are kept as objects and their double is NaN.
+     */
+    public static class Result {
+        private double[] values;
+        private Object[] objects;
+        private long[] statusCodes;
+        private long[] sourceTimes;
+        private int size;
+
+        public Result (int capacity){
+            values = new double[capacity];
+            objects = new Object[capacity];
+            statusCodes = new long[capacity];
+            sourceTimes = new long[capacity];
+        }
+
+        private void reset (int size){
+            if (size > values.length) {
+                values = new double[size];
+                objects = new Object[size];
+                statusCodes = new long[size];
+                sourceTimes = new long[size];
+            }
+            else {
+                Arrays.fill(objects, 0, this.size, null);
+            }
+            this.size = size;
+        }
+
+        private void set (int i, DataValue dataValue){
+            Object value = dataValue.getValue().getValue();
+            if (value instanceof Number) {
+                values[i] = ((Number) value).doubleValue();
+                objects[i] = null;
+            }
+            else if (value instanceof Boolean) {
+                values[i] = ((Boolean) value) ? 1 : 0;
+                objects[i] = null;
+            }
+            else {
+                values[i] = Double.NaN;
+                objects[i] = value;
+            }
+            statusCodes[i] = dataValue.getStatusCode() == null ? 0 : dataValue.getStatusCode().getValue();
+            sourceTimes[i] = dataValue.getSourceTime() == null ? 0 : dataValue.getSourceTime().getJavaTime();
+        }
+
+        public int size (){
+            return size;
+        }
+
+        public double getDouble (int i){
+            return values[i];
+        }
+
+        /**
+         * @return the value, boxed if it is numeric, NaN for a null value
+         */
+        public Object getObject (int i){
+            return (objects[i] != null) ? objects[i] : values[i];
+        }
+
+        /**
+         * @return the raw status code of the value, 0 for Good
+         */
+        public long getStatusCode (int i){
+            return statusCodes[i];
+        }
+
+        /**
+         * @return the source timestamp in Java milliseconds, 0 if the server didn't send it
+         */
+        public long getSourceTime (int i){
+            return sourceTimes[i];
+        }
+
+        /**
+         * @return the backing array of the numeric values, valid up to size()
+         */
+        public double[] getDoubles (){
+            return values;
+        }
+    }
+
+    public BulkReader (OpcUaClient client, int maxNodesPerRead, int maxInFlight){
+        this.client = client;
+        this.maxNodesPerRead = maxNodesPerRead;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Build a reader sized after the MaxNodesPerRead operation limit of the connected server.
+     */
+    public static CompletableFuture<BulkReader> fromServerLimits (OpcUaClient client, int maxInFlight){
+        return client.readValue(0.0, TimestampsToReturn.Neither,
+                                Identifiers.Server_ServerCapabilities_OperationLimits_MaxNodesPerRead)
+                     .handle((dataValue, ex) -> {
+                         int limit = DEFAULT_MAX_NODES_PER_READ;
+                         Object value = (ex == null) ? dataValue.getValue().getValue() : null;
+                         // 0 means no limit from the server
+                         if (value instanceof Number && ((Number) value).longValue() > 0) {
+                             limit = (int) Math.min(((Number) value).longValue(), DEFAULT_MAX_NODES_PER_READ);
+                         }
+                         logger.info("Reading at most {} nodes per request, {} requests in flight", limit, maxInFlight);
+                         return new BulkReader(client, limit, maxInFlight);
+                     });
+    }
+
+    public Plan prepare (List<NodeId> nodeIds){
+        List<List<ReadValueId>> requests = new ArrayList<>();
+        int[] offsets = new int[(nodeIds.size() + maxNodesPerRead - 1) / maxNodesPerRead];
+        for (int from = 0; from < nodeIds.size(); from += maxNodesPerRead) {
+            int to = Math.min(from + maxNodesPerRead, nodeIds.size());
+            List<ReadValueId> request = new ArrayList<>(to - from);
+            for (NodeId nodeId : nodeIds.subList(from, to)) {
+                request.add(new ReadValueId(nodeId, AttributeId.Value.uid(), null, QualifiedName.NULL_VALUE));
+            }
+            offsets[requests.size()] = from;
+            requests.add(request);
+        }
+        return new Plan(requests, offsets, nodeIds.size());
+    }
+
+    public CompletableFuture<Result> read (List<NodeId> nodeIds){
+        return read(prepare(nodeIds), new Result(nodeIds.size()));
+    }
+
+    /**
+     * Read every node of plan into result.
+     * @return completed with result once every request is answered, or exceptionally with the first failure, after
+     * which the contents of result are undefined; responses still in flight are dropped then, so that result can be
+     * reused for the next read
+     */
+    public CompletableFuture<Result> read (Plan plan, Result result){
+        result.reset(plan.size);
+        CompletableFuture<Result> done = new CompletableFuture<>();
+        if (plan.requests.isEmpty()) {
+            done.complete(result);
+            return done;
+        }
+        AtomicInteger nextRequest = new AtomicInteger();
+        AtomicInteger pending = new AtomicInteger(plan.requests.size());
+        for (int i = 0; i < Math.min(maxInFlight, plan.requests.size()); i++) {
+            sendNext(plan, result, nextRequest, pending, done);
+        }
+        return done;
+    }
+
+    private void sendNext (Plan plan, Result result, AtomicInteger nextRequest, AtomicInteger pending,
+                           CompletableFuture<Result> done){
+        int index = nextRequest.getAndIncrement();
+        if (index >= plan.requests.size() || done.isDone()) return;
+
+        List<ReadValueId> request = plan.requests.get(index);
+        int offset = plan.offsets[index];
+        long start = System.nanoTime();
+        requestsSent.increment();
+        client.read(0.0, TimestampsToReturn.Source, request).whenComplete((response, ex) -> {
+            DataValue[] values;
+            // Locked against the failure of another request, so that none writes into result once done failed
+            synchronized (done) {
+                if (ex != null) {
+                    done.completeExceptionally(ex);
+                    return;
+                }
+                if (done.isDone()) return;
+                requestLatency.record(System.nanoTime() - start);
+                values = response.getResults();
+                for (int i = 0; i < values.length; i++) {
+                    result.set(offset + i, values[i]);
+                }
+            }
+            nodesRead.add(values.length);
+            // Keep the window full before handing the results over
+            sendNext(plan, result, nextRequest, pending, done);
+            if (pending.decrementAndGet() == 0) done.complete(result);
+        });
+    }
+
+    public int getMaxNodesPerRead (){
+        return maxNodesPerRead;
+    }
+
+    public long getNodesRead (){
+        return nodesRead.sum();
+    }
+
+    public long getRequestsSent (){
+        return requestsSent.sum();
+    }
+
+    /**
+     * @return time from sending a Read request to receiving its response
+     */
+    public LatencyHistogram getRequestLatency (){
+        return requestLatency;
+    }
+}
@@ -2,26 +2,97 @@ package clientLogic;
 
 import org.eclipse.milo.examples.client.ClientExample;
 import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
-import org.eclipse.milo.opcua.sdk.client.api.AddressSpace;
-import org.eclipse.milo.opcua.sdk.client.api.nodes.VariableNode;
+import org.eclipse.milo.opcua.sdk.client.SessionActivityListener;
+import org.eclipse.milo.opcua.sdk.client.api.UaSession;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaMonitoredItem;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscriptionManager;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
 import org.eclipse.milo.opcua.stack.core.Identifiers;
 import org.eclipse.milo.opcua.stack.core.UaServiceFaultException;
 import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExtensionObject;
 import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DataChangeTrigger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DeadbandType;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.MonitoringMode;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.DataChangeFilter;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoredItemCreateRequest;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoringParameters;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import serverLogic.LatencyHistogram;
 import serverLogic.RedundantServerSet;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
 
 public class ClientDemo implements ClientExample {
 
     public static String ANALOGITEM_NAME = "HelloWorld/DataAccess/AnalogValue";
-    private String currentServerId = "None";
-    private String value = "None";
+    private volatile String currentServerId = "None";
+    private volatile String value = "None";
 
     private static Logger logger = LoggerFactory.getLogger(ClientDemo.class);
-    private Boolean shouldStop = false;
+
+    /**
+     * How the client follows the server: by monitored items, or by reading both values periodically.
+     */
+    public enum Mode { SUBSCRIPTION, POLLING }
+
+    private Mode mode = Mode.valueOf(System.getProperty("client.mode", "SUBSCRIPTION").toUpperCase());
+    private double samplingInterval = Double.parseDouble(System.getProperty("client.samplingMillis", "250"));
+    private int queueSize = Integer.getInteger("client.queueSize", 10);
+    private double deadband = Double.parseDouble(System.getProperty("client.deadband", "0.0"));
+
+    private final AtomicLong clientHandles = new AtomicLong(1L);
+    // Cancellation of everything run() started
+    private final CompletableFuture<Void> stopped = new CompletableFuture<>();
+
+    // Notifications are handed over to this thread, so the client's I/O threads never wait on consumers
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ClientDemo-notifications");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<BiConsumer<NodeId, DataValue>> valueListeners = new CopyOnWriteArrayList<>();
+
+    // Time from the server sampling AnalogValue to its delivery here; both ends read the same clock on one host
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+
+    /**
+     * Time shown by the trend view, ending at the newest sample.
+     */
+    public static final long TREND_WINDOW_MILLIS = Long.getLong("client.trendWindowMillis", 60_000);
+    // Highest AnalogValue rate the trend holds a whole window of
+    private static final int TREND_MAX_RATE_HZ = Integer.getInteger("client.trendMaxRateHz", 1000);
+
+    // History of AnalogValue for the trend view, by default a whole window at the highest rate
+    private final TrendBuffer trend = new TrendBuffer(Integer.getInteger(
+            "client.trendSamples", (int) Math.min(Integer.MAX_VALUE, TREND_WINDOW_MILLIS * TREND_MAX_RATE_HZ / 1000)));
+
+    // Session recovery: lastDeliveryMillis is written on the notification thread only
+    private volatile long lastDeliveryMillis;
+    private volatile long gapStartMillis;
+    private volatile boolean recovering;
+    private final LatencyHistogram dataGap = new LatencyHistogram();
+    private final LongAdder subscriptionsRecreated = new LongAdder();
+    private final LongAdder notificationsLost = new LongAdder();
 
     public String getCurrentServerId (){
         return currentServerId;
@@ -31,55 +102,258 @@ public class ClientDemo implements ClientExample {
         return value;
     }
 
+    /**
+     * Stop following the server: completes the future given to run() once the pending work is done.
+     */
     public void interrupt (){
-        synchronized (shouldStop){
-            shouldStop = true;
-        }
+        stopped.complete(null);
+    }
+
+    public ClientDemo setMode (Mode mode){
+        this.mode = mode;
+        return this;
+    }
+
+    public ClientDemo setSamplingInterval (double samplingInterval){
+        this.samplingInterval = samplingInterval;
+        return this;
+    }
+
+    public ClientDemo setQueueSize (int queueSize){
+        this.queueSize = queueSize;
+        return this;
     }
 
-    private static final long RECONNECTION_DELAY_SECONDS = 1;
+    /**
+     * @param deadband absolute change of AnalogValue below which the server doesn't notify, 0 for every change
+     */
+    public ClientDemo setDeadband (double deadband){
+        this.deadband = deadband;
+        return this;
+    }
 
+    /**
+     * @param listener told about every value notification, on the notification thread
+     */
+    public ClientDemo addValueListener (BiConsumer<NodeId, DataValue> listener){
+        valueListeners.add(listener);
+        return this;
+    }
+
+    public TrendBuffer getTrend (){
+        return trend;
+    }
+
+    public LatencyHistogram getDeliveryLatency (){
+        return deliveryLatency;
+    }
+
+    /**
+     * @return time from the last value received before a session loss to the first one after its recovery
+     */
+    public LatencyHistogram getDataGap (){
+        return dataGap;
+    }
+
+    public long getSubscriptionsRecreated (){
+        return subscriptionsRecreated.sum();
+    }
+
+    public long getNotificationsLost (){
+        return notificationsLost.sum();
+    }
+
+    private static final long POLLING_PERIOD_MILLIS = 1234;
+
+    /**
+     * Start following the server and return straight away: the work is driven by the client futures, and future is
+     * completed once interrupt() is called or the client fails.
+     */
     @Override
     public void run (OpcUaClient client, CompletableFuture<OpcUaClient> future) {
-        // synchronous connect
-        // TODO reconnect if Bad_SessionIdInvalid. OPCUA transparent redundancy give this opportunity
-        while (!shouldStop) {
-            try {
-                client.connect().get();
-                AddressSpace addressSpace = client.getAddressSpace();
+        CompletableFuture<Void> running = (mode == Mode.SUBSCRIPTION) ? runSubscription(client) : runPolling(client);
+        running.whenComplete((v, ex) -> {
+            if (ex != null) {
+                logger.error("Exception caught: {}\n\tMessage: {}", ex.getClass(), ex.getLocalizedMessage(), ex);
+            }
+            dispatcher.shutdown();
+            future.complete(client);
+        });
+    }
 
-                // Get a typed reference to the Server object: ServerNode
-                VariableNode serverIdNode = addressSpace.createVariableNode(Identifiers.Server_ServerRedundancy_CurrentServerId);
-                VariableNode node = client.getAddressSpace().createVariableNode(new NodeId(2, ANALOGITEM_NAME));
+    private CompletableFuture<Void> runSubscription (OpcUaClient client){
+        client.addSessionActivityListener(new SessionActivityListener() {
+            @Override
+            public void onSessionInactive (UaSession session){
+                // Milo reactivates the session, or creates a new one and transfers the subscriptions to it
+                if (!recovering) gapStartMillis = lastDeliveryMillis;
+                recovering = true;
+                logger.warn("Session {} lost, recovering", session.getSessionId());
+            }
 
-                logger.info("Current Server = {}", serverIdNode.readValue().get().getValue().getValue());
-                // Read properties of the Server object...
+            @Override
+            public void onSessionActive (UaSession session){
+                logger.info("Session {} active", session.getSessionId());
+            }
+        });
+        client.getSubscriptionManager().addSubscriptionListener(new UaSubscriptionManager.SubscriptionListener() {
+            @Override
+            public void onSubscriptionTransferFailed (UaSubscription subscription, StatusCode statusCode){
+                // A promoted server doesn't know the subscriptions of the failed one: monitor everything again
+                logger.warn("Can't transfer subscription {}: {}, creating it again",
+                            subscription.getSubscriptionId(), statusCode);
+                subscriptionsRecreated.increment();
+                subscribe(client).exceptionally(ex -> {
+                    logger.error("Can't create the subscription again: {}", ex.getMessage(), ex);
+                    return null;
+                });
+            }
 
-                while (true) {
-                    currentServerId = serverIdNode.readValue().get().getValue().getValue().toString();
-                    value = node.readValue().get().getValue().getValue().toString();
+            @Override
+            public void onNotificationDataLost (UaSubscription subscription){
+                // Republish couldn't recover some notifications, the next ones carry the current values
+                notificationsLost.increment();
+                logger.warn("Notifications of subscription {} lost", subscription.getSubscriptionId());
+            }
+        });
 
-                    logger.info("Value = {}", value);
-                    try {
-                        // Simulate reading of the value every n seconds
-                        Thread.sleep(1234);
-                    }
-                    catch (InterruptedException e) {
-                        logger.info("Client thread has been interrupted");
-                        break;
+        // Everything else happens in the notifications, until the client is stopped
+        return client.connect()
+                     .thenCompose((c) -> subscribe(client))
+                     .thenCompose((subscription) -> stopped);
+    }
+
+    private CompletableFuture<UaSubscription> subscribe (OpcUaClient client){
+        return client.getSubscriptionManager().createSubscription(samplingInterval).thenCompose(subscription -> {
+            List<MonitoredItemCreateRequest> requests = Arrays.asList(
+                monitoringRequest(Identifiers.Server_ServerRedundancy_CurrentServerId, null),
+                monitoringRequest(new NodeId(2, ANALOGITEM_NAME), deadbandFilter(client))
+            );
+            return subscription.createMonitoredItems(
+                TimestampsToReturn.Both,
+                requests,
+                (item, index) -> item.setValueConsumer(this::onValue)
+            ).thenApply(items -> {
+                for (UaMonitoredItem item : items) {
+                    if (item.getStatusCode().isBad()) {
+                        logger.warn("Can't monitor {}: {}", item.getReadValueId().getNodeId(), item.getStatusCode());
                     }
                 }
-            }
-            catch (Exception e){
-                if (!(e.getCause() instanceof UaServiceFaultException)){
-                    logger.error("Exception caught: {}\n\tMessage: {}\n\tCause: {}", e.getClass(), e.getLocalizedMessage(), e.getCause().getMessage());
-                    e.printStackTrace();
-                    break;
-                }
+                logger.info("Monitoring {} items, sampling every {} ms", items.size(), samplingInterval);
+                return subscription;
+            });
+        });
+    }
+
+    private MonitoredItemCreateRequest monitoringRequest (NodeId nodeId, ExtensionObject filter){
+        ReadValueId readValueId = new ReadValueId(nodeId, AttributeId.Value.uid(), null, QualifiedName.NULL_VALUE);
+        MonitoringParameters parameters = new MonitoringParameters(
+            uint(clientHandles.getAndIncrement()),
+            samplingInterval,
+            filter,
+            uint(queueSize),
+            true
+        );
+        return new MonitoredItemCreateRequest(readValueId, MonitoringMode.Reporting, parameters);
+    }
+
+    private ExtensionObject deadbandFilter (OpcUaClient client){
+        DataChangeFilter filter = new DataChangeFilter(
+            DataChangeTrigger.StatusValue,
+            uint((deadband > 0 ? DeadbandType.Absolute : DeadbandType.None).getValue()),
+            deadband
+        );
+        return ExtensionObject.encode(client.getSerializationContext(), filter);
+    }
 
+    private void onValue (UaMonitoredItem item, DataValue dataValue){
+        long receivedMillis = System.currentTimeMillis();
+        NodeId nodeId = item.getReadValueId().getNodeId();
+        // Notifications still in flight once run() is over are dropped
+        if (dispatcher.isShutdown()) return;
+        try {
+            dispatcher.execute(() -> deliver(nodeId, dataValue, receivedMillis));
+        }
+        catch (RejectedExecutionException e) {
+            logger.debug("Notification of {} received after the shutdown, dropped", nodeId);
+        }
+    }
+
+    private void deliver (NodeId nodeId, DataValue dataValue, long receivedMillis){
+        // No gap to measure if the session was lost before the first value
+        if (recovering) {
+            recovering = false;
+            if (gapStartMillis > 0) {
+                long gapMillis = receivedMillis - gapStartMillis;
+                dataGap.record(gapMillis * 1_000_000);
+                logger.info("Values flowing again after a {} ms gap", gapMillis);
+            }
+        }
+        lastDeliveryMillis = receivedMillis;
+        Object newValue = dataValue.getValue().getValue();
+        if (Identifiers.Server_ServerRedundancy_CurrentServerId.equals(nodeId)) {
+            currentServerId = String.valueOf(newValue);
+            logger.info("Current Server = {}", currentServerId);
+        }
+        else {
+            value = String.valueOf(newValue);
+            addToTrend(dataValue, receivedMillis);
+            if (dataValue.getSourceTime() != null) {
+                long latencyMillis = Math.max(0, receivedMillis - dataValue.getSourceTime().getJavaTime());
+                deliveryLatency.record(latencyMillis * 1_000_000);
+            }
+            logger.info("Value = {}", value);
+        }
+        for (BiConsumer<NodeId, DataValue> listener : valueListeners) {
+            try {
+                listener.accept(nodeId, dataValue);
+            }
+            catch (RuntimeException e) {
+                logger.error("Value listener failed: {}", e.getMessage(), e);
             }
         }
-        future.complete(client);
+    }
+
+    private void addToTrend (DataValue dataValue, long receivedMillis){
+        Object newValue = dataValue.getValue().getValue();
+        if (!(newValue instanceof Number)) return;
+        long time = (dataValue.getSourceTime() != null) ? dataValue.getSourceTime().getJavaTime() : receivedMillis;
+        trend.add(time, ((Number) newValue).doubleValue());
+    }
+
+    private CompletableFuture<Void> runPolling (OpcUaClient client){
+        return client.connect().thenCompose((c) -> {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            poll(client, done);
+            return done;
+        });
+    }
+
+    private void poll (OpcUaClient client, CompletableFuture<Void> done){
+        if (stopped.isDone()) {
+            done.complete(null);
+            return;
+        }
+        CompletableFuture<DataValue> serverId = client.readValue(
+                0.0, TimestampsToReturn.Neither, Identifiers.Server_ServerRedundancy_CurrentServerId);
+        CompletableFuture<DataValue> analog = client.readValue(
+                0.0, TimestampsToReturn.Both, new NodeId(2, ANALOGITEM_NAME));
+        serverId.thenAcceptBoth(analog, (id, data) -> {
+            currentServerId = String.valueOf(id.getValue().getValue());
+            value = String.valueOf(data.getValue().getValue());
+            addToTrend(data, System.currentTimeMillis());
+            logger.info("Value = {}", value);
+        }).whenComplete((v, ex) -> {
+            // Milo reactivates or recreates the session by itself, a service fault only makes this read again.
+            // The subscription mode also recovers the monitored items, see runSubscription()
+            if (ex != null && !(ex.getCause() instanceof UaServiceFaultException)) {
+                done.completeExceptionally(ex);
+                return;
+            }
+            // Simulate reading of the value every n milliseconds, without holding a thread in between
+            CompletableFuture.runAsync(() -> poll(client, done),
+                    CompletableFuture.delayedExecutor(POLLING_PERIOD_MILLIS, TimeUnit.MILLISECONDS, dispatcher));
+        });
     }
 
 
@@ -3,6 +3,7 @@ package clientLogic;
 import org.eclipse.milo.examples.client.ClientExample;
 import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
 import org.eclipse.milo.opcua.sdk.client.api.config.OpcUaClientConfig;
+import org.eclipse.milo.opcua.sdk.client.api.config.OpcUaClientConfigBuilder;
 import org.eclipse.milo.opcua.stack.client.DiscoveryClient;
 import org.eclipse.milo.opcua.stack.core.Stack;
 import org.eclipse.milo.opcua.stack.core.UaRuntimeException;
@@ -19,29 +20,39 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletionException;
 
 import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
 
 public class ClientDemoRunner implements Runnable{
     private static final Logger logger = LoggerFactory.getLogger(ClientDemoRunner.class.getName());
 
+    // The demo notices a failed server after KEEP_ALIVE_FAILURES missed keep-alives, which bounds the failover data
+    // gap; clients created for other uses keep the Milo defaults
+    private static final long KEEP_ALIVE_INTERVAL_MILLIS = Long.getLong("client.keepAliveMillis", 1000);
+    private static final long KEEP_ALIVE_FAILURES = Long.getLong("client.keepAliveFailures", 1);
+
     private ClientExample clientExample;
+    private volatile OpcUaClient client;
     private CompletableFuture<OpcUaClient> futureDisconnect = new CompletableFuture<>();
 
     public ClientDemoRunner (ClientExample clientExample) {
         this.clientExample = clientExample;
-        this.futureDisconnect.whenCompleteAsync((c, ex) -> {
+        this.futureDisconnect.whenComplete((c, ex) -> {
             if (ex != null) {
                 logger.error("Error running example: {}", ex.getMessage(), ex);
             }
-            try {
-                c.disconnect().get();
+            CompletableFuture<?> disconnected = (client != null)
+                    ? client.disconnect()
+                    : CompletableFuture.completedFuture(null);
+            // Async: the shared resources can't be released from one of their own threads
+            disconnected.whenCompleteAsync((d, e) -> {
+                if (e != null) {
+                    logger.error("Error disconnecting: {}.\n{}", e.getMessage(), e);
+                }
                 Stack.releaseSharedResources();
-            } catch (InterruptedException | ExecutionException e) {
-                logger.error("Error disconnecting: {}.\n{}", e.getMessage(), e);
-            }
-            System.exit(0);
+                System.exit(0);
+            });
         });
     }
 
@@ -49,82 +60,116 @@ public class ClientDemoRunner implements Runnable{
         return clientExample;
     }
 
-    private OpcUaClient createClient() throws Exception {
+    static KeyStoreLoader loadKeyStore () throws Exception {
         Path securityTempDir = Paths.get(System.getProperty("java.io.tmpdir"), "security");
         Files.createDirectories(securityTempDir);
         if (!Files.exists(securityTempDir)) {
             throw new IOException("unable to create security dir: " + securityTempDir);
         }
-        LoggerFactory.getLogger(getClass())
-                .info("security temp dir: {}", securityTempDir.toAbsolutePath());
-
-        KeyStoreLoader loader = new KeyStoreLoader().load(securityTempDir);
+        logger.info("security temp dir: {}", securityTempDir.toAbsolutePath());
 
-        SecurityPolicy securityPolicy = clientExample.getSecurityPolicy();
-
-        List<EndpointDescription> endpoints;
-
-        try {
-            endpoints = DiscoveryClient.getEndpoints(clientExample.getEndpointUrl()).get();
-        }
-        catch (Throwable ex) {
-            // try the explicit discovery endpoint as well
-            String discoveryUrl = clientExample.getEndpointUrl();
+        return new KeyStoreLoader().load(securityTempDir);
+    }
 
-            if (!discoveryUrl.endsWith("/")) {
-                discoveryUrl += "/";
-            }
-            discoveryUrl += "discovery";
+    static EndpointDescription discoverEndpoint (ClientExample clientExample) throws Exception {
+        return discoverEndpointAsync(clientExample).get();
+    }
 
-            logger.info("Trying explicit discovery URL: {}", discoveryUrl);
-            endpoints = DiscoveryClient.getEndpoints(discoveryUrl).get();
-        }
+    static CompletableFuture<EndpointDescription> discoverEndpointAsync (ClientExample clientExample){
+        SecurityPolicy securityPolicy = clientExample.getSecurityPolicy();
 
-        EndpointDescription endpoint = endpoints.stream()
-                .filter(e -> e.getSecurityPolicyUri().equals(securityPolicy.getUri()))
-                .filter(clientExample.endpointFilter())
-                .findFirst()
-                .orElseThrow(() -> new UaRuntimeException(StatusCode.BAD.getValue(), "no desired endpoints returned"));
+        return DiscoveryClient.getEndpoints(clientExample.getEndpointUrl())
+                .exceptionallyCompose(ex -> {
+                    // try the explicit discovery endpoint as well
+                    String discoveryUrl = clientExample.getEndpointUrl();
+
+                    if (!discoveryUrl.endsWith("/")) {
+                        discoveryUrl += "/";
+                    }
+                    discoveryUrl += "discovery";
+
+                    logger.info("Trying explicit discovery URL: {}", discoveryUrl);
+                    return DiscoveryClient.getEndpoints(discoveryUrl);
+                })
+                .thenApply(endpoints -> {
+                    EndpointDescription endpoint = endpoints.stream()
+                            .filter(e -> e.getSecurityPolicyUri().equals(securityPolicy.getUri()))
+                            .filter(clientExample.endpointFilter())
+                            .findFirst()
+                            .orElseThrow(() -> new UaRuntimeException(StatusCode.BAD.getValue(), "no desired endpoints returned"));
+
+                    logger.info("Using endpoint: {} [{}/{}]",
+                            endpoint.getEndpointUrl(), securityPolicy, endpoint.getSecurityMode());
+                    return endpoint;
+                });
+    }
 
-        logger.info("Using endpoint: {} [{}/{}]",
-                endpoint.getEndpointUrl(), securityPolicy, endpoint.getSecurityMode());
+    /**
+     * Create a client for an endpoint already discovered, so that many clients can share one discovery and one
+     * key store. The session keep-alive is left to the Milo defaults.
+     */
+    static OpcUaClient createClient (ClientExample clientExample, EndpointDescription endpoint,
+                                     KeyStoreLoader loader) throws Exception {
+        return OpcUaClient.create(configBuilder(clientExample, endpoint, loader).build());
+    }
 
-        OpcUaClientConfig config = OpcUaClientConfig.builder()
+    private static OpcUaClientConfigBuilder configBuilder (ClientExample clientExample, EndpointDescription endpoint,
+                                                           KeyStoreLoader loader){
+        return OpcUaClientConfig.builder()
                 .setApplicationName(LocalizedText.english("eclipse milo opc-ua client"))
                 .setApplicationUri("urn:eclipse:milo:examples:client")
                 .setCertificate(loader.getClientCertificate())
                 .setKeyPair(loader.getClientKeyPair())
                 .setEndpoint(endpoint)
                 .setIdentityProvider(clientExample.getIdentityProvider())
-                .setRequestTimeout(uint(5000))
-                .build();
-
-        return OpcUaClient.create(config);
+                .setRequestTimeout(uint(5000));
     }
 
-    @Override
-    public void run (){
-        try {
-            OpcUaClient client = createClient();
+    /**
+     * Create the client and run the example on it, without blocking the caller.
+     * @return completed with the client once the example is done, the client being disconnected then
+     */
+    public CompletableFuture<OpcUaClient> start (){
+        discoverEndpointAsync(clientExample).thenApply(endpoint -> {
+            try {
+                return OpcUaClient.create(configBuilder(clientExample, endpoint, loadKeyStore())
+                                                  .setKeepAliveInterval(uint(KEEP_ALIVE_INTERVAL_MILLIS))
+                                                  .setKeepAliveFailuresAllowed(uint(KEEP_ALIVE_FAILURES))
+                                                  .build());
+            }
+            catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }).whenComplete((c, ex) -> {
+            if (ex != null) {
+                logger.error("Error creating client: {}", ex.getMessage(), ex);
+                futureDisconnect.completeExceptionally(ex);
+                return;
+            }
+            client = c;
             try {
-                clientExample.run(client, futureDisconnect);
+                clientExample.run(c, futureDisconnect);
             } catch (Throwable t) {
                 logger.error("Error running client example: {}", t.getMessage(), t);
                 futureDisconnect.completeExceptionally(t);
             }
-        }
-        catch (Throwable t) {
-            logger.error("Error creating client: {}", t.getMessage(), t);
-            futureDisconnect.completeExceptionally(t);
-        }
+        });
+        return futureDisconnect;
     }
 
-    public void stop (){
-        try {
-            futureDisconnect.get();
-        }
-        catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
+    @Override
+    public void run (){
+        start();
+    }
+
+    /**
+     * Ask the example to stop, when it can be asked to.
+     * @return completed once the example is done
+     */
+    public CompletableFuture<OpcUaClient> stop (){
+        if (clientExample instanceof ClientDemo) {
+            ((ClientDemo) clientExample).interrupt();
         }
+        return futureDisconnect;
     }
 }
@@ -0,0 +1,338 @@
+package clientLogic;
+
+import org.eclipse.milo.examples.client.ClientExample;
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.Stack;
+import org.eclipse.milo.opcua.stack.core.UaRuntimeException;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.BrowseDirection;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.BrowseResultMask;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.MonitoringMode;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.CallMethodRequest;
+import org.eclipse.milo.opcua.stack.core.types.structured.EndpointDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoredItemCreateRequest;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoringParameters;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import serverLogic.LatencyHistogram;
+import serverLogic.RedundantServerSet;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+/**
+ * Load test of a RedundantServerSet: many concurrent sessions, each running a closed loop of operations drawn from
+ * a weighted mix of reads, writes, browses, method calls and subscription churn, for a fixed duration.
+ * A session issues its next operation from the completion of the previous one, so thousands of sessions need only
+ * a few driver threads. Every session can also hold a subscription on AnalogValue for the whole run.
+ * The throughput and latency percentiles of each operation are reported as a JSON summary.
+ *
+ * Configured by system properties: load.sessions, load.durationSeconds, load.mix (e.g. "read=60,write=20,browse=10,
+ * call=5,subscribe=5"), load.holdSubscriptions, load.servers (servers of a set started in this JVM, 0 for none)
+ * and load.output (file for the summary).
+ */
+public class LoadGenerator {
+
+    public enum Operation { READ, WRITE, BROWSE, CALL, SUBSCRIBE }
+
+    public static final String DEFAULT_MIX = "read=60,write=20,browse=10,call=5,subscribe=5";
+
+    private static final NodeId ANALOG_NODE = new NodeId(2, ClientDemo.ANALOGITEM_NAME);
+    private static final NodeId WRITE_NODE = new NodeId(2, "HelloWorld/ScalarTypes/Double");
+    private static final NodeId BROWSE_NODE = new NodeId(2, "HelloWorld");
+
+    private static Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private final ClientExample clientExample;
+    private int sessions = 100;
+    private long durationMillis = 30_000;
+    private boolean holdSubscriptions = true;
+    private final Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+    private Operation[] draw;
+
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final LongAdder notifications = new LongAdder();
+    private final LatencyHistogram connectTime = new LatencyHistogram();
+    private long deadlineNanos;
+
+    private static class OperationStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    private static class Session {
+        final OpcUaClient client;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        UaSubscription subscription;
+
+        Session (OpcUaClient client){
+            this.client = client;
+        }
+    }
+
+    public LoadGenerator (ClientExample clientExample){
+        this.clientExample = clientExample;
+        for (Operation operation : Operation.values()) stats.put(operation, new OperationStats());
+        setMix(DEFAULT_MIX);
+    }
+
+    public static LoadGenerator fromSystemProperties (ClientExample clientExample){
+        return new LoadGenerator(clientExample)
+            .setSessions(Integer.getInteger("load.sessions", 100))
+            .setDurationSeconds(Long.getLong("load.durationSeconds", 30))
+            .setMix(System.getProperty("load.mix", DEFAULT_MIX))
+            .setHoldSubscriptions(Boolean.parseBoolean(System.getProperty("load.holdSubscriptions", "true")));
+    }
+
+    public LoadGenerator setSessions (int sessions){
+        this.sessions = sessions;
+        return this;
+    }
+
+    public LoadGenerator setDurationSeconds (long seconds){
+        this.durationMillis = seconds * 1000;
+        return this;
+    }
+
+    public LoadGenerator setHoldSubscriptions (boolean holdSubscriptions){
+        this.holdSubscriptions = holdSubscriptions;
+        return this;
+    }
+
+    /**
+     * @param mix comma separated operation=weight pairs, missing operations get a weight of 0
+     */
+    public LoadGenerator setMix (String mix){
+        weights.clear();
+        for (String entry : mix.split(",")) {
+            String[] pair = entry.trim().split("=");
+            if (pair.length != 2) throw new IllegalArgumentException("Bad mix entry: " + entry);
+            weights.put(Operation.valueOf(pair[0].trim().toUpperCase()), Integer.parseInt(pair[1].trim()));
+        }
+        // One slot per weight unit, so picking an operation is a single random index
+        List<Operation> slots = new ArrayList<>();
+        weights.forEach((operation, weight) -> slots.addAll(Collections.nCopies(weight, operation)));
+        if (slots.isEmpty()) throw new IllegalArgumentException("Empty mix: " + mix);
+        draw = slots.toArray(new Operation[0]);
+        return this;
+    }
+
+    /**
+     * Connect the sessions, run the mix on all of them until the duration elapses and disconnect them.
+     * @return the JSON summary of the run
+     */
+    public String run () throws Exception {
+        EndpointDescription endpoint = ClientDemoRunner.discoverEndpoint(clientExample);
+        KeyStoreLoader loader = ClientDemoRunner.loadKeyStore();
+        ExecutorService driver = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                Thread thread = new Thread(r, "load-driver");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        List<Session> all = new ArrayList<>(sessions);
+        try {
+            List<CompletableFuture<?>> connected = new ArrayList<>(sessions);
+            for (int i = 0; i < sessions; i++) {
+                Session session = new Session(ClientDemoRunner.createClient(clientExample, endpoint, loader));
+                all.add(session);
+                long start = System.nanoTime();
+                connected.add(session.client.connect()
+                                     .thenRun(() -> connectTime.record(System.nanoTime() - start))
+                                     .thenCompose(v -> setUp(session)));
+            }
+            CompletableFuture.allOf(connected.toArray(new CompletableFuture<?>[0])).get();
+            logger.info("{} sessions connected, running {} for {} ms", sessions, weights, durationMillis);
+
+            long startNanos = System.nanoTime();
+            deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+            for (Session session : all) {
+                driver.execute(() -> next(session, driver));
+            }
+            CompletableFuture.allOf(all.stream().map(s -> s.done).toArray(CompletableFuture[]::new))
+                             .get(durationMillis + RedundantServerSet.STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            return summary(System.nanoTime() - startNanos);
+        }
+        finally {
+            CompletableFuture.allOf(all.stream()
+                                       .map(s -> s.client.disconnect().exceptionally(ex -> null))
+                                       .toArray(CompletableFuture[]::new))
+                             .get(RedundantServerSet.STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            driver.shutdownNow();
+        }
+    }
+
+    private CompletableFuture<Void> setUp (Session session){
+        if (!holdSubscriptions && weights.getOrDefault(Operation.CALL, 0) == 0) return CompletableFuture.completedFuture(null);
+        return subscribe(session.client).thenAccept(subscription -> session.subscription = subscription);
+    }
+
+    private CompletableFuture<UaSubscription> subscribe (OpcUaClient client){
+        return client.getSubscriptionManager().createSubscription(1000.0).thenCompose(subscription -> {
+            ReadValueId readValueId = new ReadValueId(ANALOG_NODE, AttributeId.Value.uid(), null,
+                                                      QualifiedName.NULL_VALUE);
+            MonitoringParameters parameters = new MonitoringParameters(uint(1), 1000.0, null, uint(1), true);
+            MonitoredItemCreateRequest request = new MonitoredItemCreateRequest(readValueId, MonitoringMode.Reporting,
+                                                                                parameters);
+            return subscription.createMonitoredItems(
+                TimestampsToReturn.Neither,
+                Collections.singletonList(request),
+                (item, index) -> item.setValueConsumer((i, v) -> notifications.increment())
+            ).thenApply(items -> subscription);
+        });
+    }
+
+    private void next (Session session, ExecutorService driver){
+        if (System.nanoTime() >= deadlineNanos) {
+            session.done.complete(null);
+            return;
+        }
+        Operation operation = draw[ThreadLocalRandom.current().nextInt(draw.length)];
+        long start = System.nanoTime();
+        CompletableFuture<?> result;
+        try {
+            result = execute(session, operation);
+        }
+        catch (RuntimeException e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+        // Async so that operations failing straight away don't grow the stack
+        result.whenCompleteAsync((r, ex) -> {
+            OperationStats operationStats = stats.get(operation);
+            operationStats.latency.record(System.nanoTime() - start);
+            operationStats.count.increment();
+            if (ex != null) operationStats.errors.increment();
+            next(session, driver);
+        }, driver);
+    }
+
+    private CompletableFuture<?> execute (Session session, Operation operation){
+        OpcUaClient client = session.client;
+        switch (operation) {
+            case READ:
+                return client.readValue(0.0, TimestampsToReturn.Both, ANALOG_NODE).thenApply(LoadGenerator::checkValue);
+            case WRITE:
+                DataValue value = DataValue.valueOnly(new Variant(ThreadLocalRandom.current().nextDouble()));
+                return client.writeValue(WRITE_NODE, value).thenApply(LoadGenerator::check);
+            case BROWSE:
+                BrowseDescription browse = new BrowseDescription(
+                    BROWSE_NODE,
+                    BrowseDirection.Forward,
+                    Identifiers.References,
+                    true,
+                    uint(NodeClass.Object.getValue() | NodeClass.Variable.getValue()),
+                    uint(BrowseResultMask.All.getValue())
+                );
+                return client.browse(browse).thenApply(result -> check(result.getStatusCode()));
+            case CALL:
+                // The demo namespace has no method of its own, Server.GetMonitoredItems is always there
+                CallMethodRequest call = new CallMethodRequest(
+                    Identifiers.Server,
+                    Identifiers.Server_GetMonitoredItems,
+                    new Variant[]{new Variant(session.subscription.getSubscriptionId())}
+                );
+                return client.call(call).thenApply(result -> check(result.getStatusCode()));
+            case SUBSCRIBE:
+                return subscribe(client).thenCompose(
+                    subscription -> client.getSubscriptionManager().deleteSubscription(subscription.getSubscriptionId()));
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    private static StatusCode check (StatusCode statusCode){
+        if (statusCode != null && statusCode.isBad()) {
+            throw new UaRuntimeException(statusCode.getValue(), statusCode.toString());
+        }
+        return statusCode;
+    }
+
+    private static DataValue checkValue (DataValue dataValue){
+        check(dataValue.getStatusCode());
+        return dataValue;
+    }
+
+    private String summary (long elapsedNanos){
+        double seconds = elapsedNanos / 1e9;
+        long total = stats.values().stream().mapToLong(s -> s.count.sum()).sum();
+        StringBuilder json = new StringBuilder("{\n");
+        json.append(String.format("  \"sessions\": %d,%n", sessions));
+        json.append(String.format("  \"durationSeconds\": %.3f,%n", seconds));
+        json.append(String.format("  \"mix\": \"%s\",%n", weights));
+        json.append(String.format("  \"throughput\": %.1f,%n", total / seconds));
+        json.append(String.format("  \"notifications\": %d,%n", notifications.sum()));
+        json.append(String.format("  \"connectP99Micros\": %d,%n", connectTime.getPercentileNanos(99) / 1000));
+        json.append("  \"operations\": {\n");
+        String separator = "";
+        for (Operation operation : weights.keySet()) {
+            OperationStats s = stats.get(operation);
+            json.append(separator);
+            json.append(String.format("    \"%s\": {\"count\": %d, \"errors\": %d, \"throughput\": %.1f, "
+                                      + "\"p50Micros\": %d, \"p99Micros\": %d, \"p999Micros\": %d}",
+                                      operation.name().toLowerCase(), s.count.sum(), s.errors.sum(),
+                                      s.count.sum() / seconds,
+                                      s.latency.getPercentileNanos(50) / 1000,
+                                      s.latency.getPercentileNanos(99) / 1000,
+                                      s.latency.getPercentileNanos(99.9) / 1000));
+            separator = ",\n";
+        }
+        json.append("\n  }\n}\n");
+        return json.toString();
+    }
+
+    public static void main (String[] args) throws Exception {
+        int servers = Integer.getInteger("load.servers", 0);
+        if (servers > 0) {
+            new RedundantServerSet(servers).start();
+        }
+
+        ClientDemo clientExample = new ClientDemo();
+        long deadline = System.currentTimeMillis() + RedundantServerSet.STARTUP_TIMEOUT_MILLIS;
+        while (servers > 0) {
+            // The servers started here may not be listening yet
+            try {
+                ClientDemoRunner.discoverEndpoint(clientExample);
+                break;
+            }
+            catch (Exception e) {
+                if (System.currentTimeMillis() > deadline) throw e;
+                Thread.sleep(200);
+            }
+        }
+
+        String summary = fromSystemProperties(clientExample).run();
+        System.out.print(summary);
+        String output = System.getProperty("load.output");
+        if (output != null) Files.write(Paths.get(output), summary.getBytes(StandardCharsets.UTF_8));
+        Stack.releaseSharedResources();
+        System.exit(0);
+    }
+}
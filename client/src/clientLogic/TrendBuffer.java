@@ -0,0 +1,75 @@
+package clientLogic;
+
+/**
+ * The last capacity (timestamp, value) samples of a signal, overwriting the oldest ones, kept in primitive columns
+ * so that adding a sample doesn't allocate.
+ * decimate() reduces a time window to one (min, max) pair per screen column, into arrays owned by the caller, so
+ * that a chart showing thousands of samples per second draws at most two points per pixel and allocates nothing per
+ * frame. One thread adds samples while another decimates them.
+ */
+public class TrendBuffer {
+
+    private final long[] timestamps;
+    private final double[] values;
+    // Number of samples ever added, the next one goes to count % capacity
+    private long count;
+
+    public TrendBuffer (int capacity){
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        timestamps = new long[capacity];
+        values = new double[capacity];
+    }
+
+    public synchronized void add (long timestampMillis, double value){
+        int slot = (int) (count % timestamps.length);
+        timestamps[slot] = timestampMillis;
+        values[slot] = value;
+        count++;
+    }
+
+    public int capacity (){
+        return timestamps.length;
+    }
+
+    public synchronized int size (){
+        return (int) Math.min(count, timestamps.length);
+    }
+
+    /**
+     * @return the timestamp of the newest sample, 0 if there is none
+     */
+    public synchronized long getLastTimestamp (){
+        return (count == 0) ? 0 : timestamps[(int) ((count - 1) % timestamps.length)];
+    }
+
+    /**
+     * Reduce the samples of [fromMillis, toMillis) to mins.length columns of equal duration.
+     * @param mins receives the smallest value of each column, NaN for a column without samples
+     * @param maxs receives the largest value of each column, NaN for a column without samples, same length as mins
+     * @return the number of samples in the window
+     */
+    public synchronized int decimate (long fromMillis, long toMillis, double[] mins, double[] maxs){
+        int columns = mins.length;
+        for (int c = 0; c < columns; c++) {
+            mins[c] = Double.NaN;
+            maxs[c] = Double.NaN;
+        }
+        long span = toMillis - fromMillis;
+        if (span <= 0 || columns == 0) return 0;
+
+        int size = (int) Math.min(count, timestamps.length);
+        int slot = (int) ((count - size) % timestamps.length);
+        int inWindow = 0;
+        for (int i = 0; i < size; i++, slot = (slot + 1 == timestamps.length) ? 0 : slot + 1) {
+            long t = timestamps[slot];
+            if (t < fromMillis || t >= toMillis) continue;
+            int c = (int) ((t - fromMillis) * columns / span);
+            double v = values[slot];
+            // NaN compares false, so the first sample of a column sets both bounds
+            if (!(v >= mins[c])) mins[c] = v;
+            if (!(v <= maxs[c])) maxs[c] = v;
+            inWindow++;
+        }
+        return inWindow;
+    }
+}
@@ -2,10 +2,14 @@ package clientUI;
 
 import clientLogic.ClientDemo;
 import clientLogic.ClientDemoRunner;
+import clientLogic.TrendBuffer;
 import javafx.animation.AnimationTimer;
 import javafx.fxml.FXML;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.Button;
 import javafx.scene.control.TextField;
+import javafx.scene.paint.Color;
 
 public class ClientUIController {
     public static final String CLIENT_START = "Start";
@@ -17,22 +21,28 @@ public class ClientUIController {
     private TextField txtCurrentServer;
     @FXML
     private TextField txtDataValue;
+    @FXML
+    private Canvas trendCanvas;
+
+    private double[] trendMins = new double[0];
+    private double[] trendMaxs = new double[0];
+    private long trendDrawnTimestamp;
 
     private ClientDemoRunner client;
     private AnimationTimer timer;
-    private Thread clientThread;
 
     public void initialize () {
         client = new ClientDemoRunner(new ClientDemo());
-        clientThread = new Thread(client, "Client");
         timer = new AnimationTimer(){
             @Override
             public void handle (long l){
                 try {
-                    String currentServer = ((ClientDemo) client.getClientExample()).getCurrentServerId();
-                    String data = ((ClientDemo) client.getClientExample()).getValue();
+                    ClientDemo demo = (ClientDemo) client.getClientExample();
+                    String currentServer = demo.getCurrentServerId();
+                    String data = demo.getValue();
                     txtCurrentServer.textProperty().setValue(currentServer);
                     txtDataValue.textProperty().setValue(data);
+                    drawTrend(demo.getTrend());
                 }
                 catch (Exception ignored){}
             }
@@ -42,13 +52,13 @@ public class ClientUIController {
             switch (startBtn.textProperty().get()){
                 case CLIENT_START:
                     startBtn.textProperty().setValue(CLIENT_STOP);
-                    clientThread.start();
+                    client.start();
                     timer.start();
                     break;
 
                 case CLIENT_STOP:
                     startBtn.textProperty().setValue(CLIENT_START);
-                    clientThread.interrupt();
+                    client.stop();
                     timer.stop();
                     break;
 
@@ -57,4 +67,48 @@ public class ClientUIController {
             }
         });
     }
-}
\ No newline at end of file
+
+    /**
+     * Draw the trend with one min/max bar per pixel column, redrawing only when a sample was added.
+     */
+    private void drawTrend (TrendBuffer trend){
+        long last = trend.getLastTimestamp();
+        if (last == 0 || last == trendDrawnTimestamp) return;
+        trendDrawnTimestamp = last;
+
+        int columns = (int) trendCanvas.getWidth();
+        if (trendMins.length != columns) {
+            trendMins = new double[columns];
+            trendMaxs = new double[columns];
+        }
+        double height = trendCanvas.getHeight();
+        GraphicsContext gc = trendCanvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, trendCanvas.getWidth(), height);
+        if (trend.decimate(last + 1 - ClientDemo.TREND_WINDOW_MILLIS, last + 1, trendMins, trendMaxs) == 0) return;
+
+        double low = Double.POSITIVE_INFINITY;
+        double high = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < columns; c++) {
+            if (Double.isNaN(trendMins[c])) continue;
+            low = Math.min(low, trendMins[c]);
+            high = Math.max(high, trendMaxs[c]);
+        }
+        double scale = (high > low) ? (height - 1) / (high - low) : 0;
+
+        gc.setStroke(Color.DODGERBLUE);
+        gc.setLineWidth(1);
+        double previousX = Double.NaN;
+        double previousY = 0;
+        for (int c = 0; c < columns; c++) {
+            if (Double.isNaN(trendMins[c])) continue;
+            double x = c + 0.5;
+            double yMin = height - 0.5 - (trendMins[c] - low) * scale;
+            double yMax = height - 0.5 - (trendMaxs[c] - low) * scale;
+            // Join the columns, then show the whole range of the samples falling in this one
+            if (!Double.isNaN(previousX)) gc.strokeLine(previousX, previousY, x, yMin);
+            gc.strokeLine(x, yMin, x, yMax);
+            previousX = x;
+            previousY = yMax;
+        }
+    }
+}
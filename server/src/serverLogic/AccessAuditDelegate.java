@@ -0,0 +1,49 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.sdk.server.api.nodes.VariableNode;
+import org.eclipse.milo.opcua.sdk.server.nodes.AttributeContext;
+import org.eclipse.milo.opcua.sdk.server.nodes.delegates.AttributeDelegate;
+import org.eclipse.milo.opcua.sdk.server.nodes.delegates.DelegatingAttributeDelegate;
+import org.eclipse.milo.opcua.stack.core.UaException;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Drop-in replacement of ValueLoggingDelegate that hands external reads and writes to the AccessAuditor instead
+ * of logging them on the calling thread.
+ */
+public class AccessAuditDelegate extends DelegatingAttributeDelegate {
+
+    private final AccessAuditor auditor;
+
+    public AccessAuditDelegate(AccessAuditor auditor) {
+        this.auditor = auditor;
+    }
+
+    public AccessAuditDelegate(AccessAuditor auditor, @Nullable AttributeDelegate parent) {
+        super(parent);
+        this.auditor = auditor;
+    }
+
+    @Override
+    public DataValue getValue(AttributeContext context, VariableNode node) throws UaException {
+        DataValue value = super.getValue(context, node);
+
+        // only audit external reads
+        if (context.getSession().isPresent()) {
+            auditor.recordRead(node.getNodeId(), value);
+        }
+        return value;
+    }
+
+    @Override
+    public void setValue(AttributeContext context, VariableNode node, DataValue value) throws UaException {
+        // only audit external writes
+        if (context.getSession().isPresent()) {
+            auditor.recordWrite(node.getNodeId(), value);
+        }
+
+        super.setValue(context, node, value);
+    }
+
+}
@@ -0,0 +1,149 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates the external reads and writes of the nodes.
+ * Recording an access only bumps lock-free per node counters; one access out of sampleRate is also queued as an
+ * individual event. A background thread logs the sampled events and a per node summary of counts and rates every
+ * summary period, so the calling threads never format or log anything.
+ * Configured by the "audit.sampleRate" (default 1000, 0 disables sampling) and "audit.summarySeconds" (default 10)
+ * system properties.
+ */
+public class AccessAuditor {
+
+    private static final int MAX_PENDING_EVENTS = 10_000;
+
+    private static final class Counters {
+        private final LongAdder reads = new LongAdder();
+        private final LongAdder writes = new LongAdder();
+        // Only touched by the summary thread
+        private long lastReads = 0;
+        private long lastWrites = 0;
+    }
+
+    private static final class Event {
+        private final boolean write;
+        private final NodeId nodeId;
+        private final DataValue value;
+
+        private Event (boolean write, NodeId nodeId, DataValue value){
+            this.write = write;
+            this.nodeId = nodeId;
+            this.value = value;
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final int sampleRate;
+    private final long summaryMillis;
+    private final Map<NodeId, Counters> counters = new ConcurrentHashMap<>();
+    private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingEvents = new AtomicInteger();
+    private final LongAdder droppedEvents = new LongAdder();
+    private final ScheduledExecutorService executor;
+    private long lastSummaryNanos = System.nanoTime();
+
+    /**
+     * @return an auditor configured by the system properties, its summary thread is stopped by shutdown()
+     */
+    public static AccessAuditor fromSystemProperties (){
+        return new AccessAuditor(Integer.getInteger("audit.sampleRate", 1000),
+                                 Long.getLong("audit.summarySeconds", 10) * 1000);
+    }
+
+    public AccessAuditor (int sampleRate, long summaryMillis){
+        this.sampleRate = sampleRate;
+        this.summaryMillis = summaryMillis;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "access-audit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::writeSummary, summaryMillis, summaryMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void recordRead (NodeId nodeId, DataValue value){
+        countersOf(nodeId).reads.increment();
+        sample(false, nodeId, value);
+    }
+
+    public void recordWrite (NodeId nodeId, DataValue value){
+        countersOf(nodeId).writes.increment();
+        sample(true, nodeId, value);
+    }
+
+    public long getReadCount (NodeId nodeId){
+        Counters nodeCounters = counters.get(nodeId);
+        return (nodeCounters != null) ? nodeCounters.reads.sum() : 0;
+    }
+
+    public long getWriteCount (NodeId nodeId){
+        Counters nodeCounters = counters.get(nodeId);
+        return (nodeCounters != null) ? nodeCounters.writes.sum() : 0;
+    }
+
+    public long getDroppedEventCount (){
+        return droppedEvents.sum();
+    }
+
+    public void shutdown (){
+        executor.shutdown();
+        writeSummary();
+    }
+
+    private Counters countersOf (NodeId nodeId){
+        Counters nodeCounters = counters.get(nodeId);
+        return (nodeCounters != null) ? nodeCounters : counters.computeIfAbsent(nodeId, id -> new Counters());
+    }
+
+    private void sample (boolean write, NodeId nodeId, DataValue value){
+        if (sampleRate <= 0 || ThreadLocalRandom.current().nextInt(sampleRate) != 0) return;
+        if (pendingEvents.incrementAndGet() > MAX_PENDING_EVENTS) {
+            pendingEvents.decrementAndGet();
+            droppedEvents.increment();
+            return;
+        }
+        events.offer(new Event(write, nodeId, value));
+    }
+
+    private synchronized void writeSummary (){
+        Event event;
+        while ((event = events.poll()) != null) {
+            pendingEvents.decrementAndGet();
+            logger.info("{}() nodeId={} value={}", event.write ? "setValue" : "getValue", event.nodeId, event.value);
+        }
+
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - lastSummaryNanos) / 1e9);
+        lastSummaryNanos = now;
+        counters.forEach((nodeId, nodeCounters) -> {
+            long reads = nodeCounters.reads.sum();
+            long writes = nodeCounters.writes.sum();
+            long newReads = reads - nodeCounters.lastReads;
+            long newWrites = writes - nodeCounters.lastWrites;
+            nodeCounters.lastReads = reads;
+            nodeCounters.lastWrites = writes;
+            if (newReads > 0 || newWrites > 0) {
+                logger.info("nodeId={} reads={} ({}/s) writes={} ({}/s)",
+                            nodeId, reads, String.format("%.1f", newReads / seconds),
+                            writes, String.format("%.1f", newWrites / seconds));
+            }
+        });
+    }
+}
@@ -0,0 +1,309 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers Average, Minimum, Maximum, Count and Interpolative over the intervals of a time range, from rollups kept
+ * next to a TimeSeriesStore. Every point appended through the engine also updates, for each rollup width, the
+ * count, sum, min and max of the bucket it falls in, so an interval is mostly made of whole buckets: only the parts
+ * of an interval not aligned on a bucket are combined from a finer width, or scanned from the raw points.
+ * Interpolative only looks at the points around each interval start, found by the store seek.
+ * The rollups live in memory and are rebuilt from the store when the engine is opened.
+ */
+public class AggregateEngine {
+
+    /**
+     * Default rollup widths, one minute and one hour.
+     */
+    public static final long[] DEFAULT_WIDTHS_MILLIS = {60_000, 3_600_000};
+
+    private static final Map<TimeSeriesStore, AggregateEngine> OPEN_ENGINES = new ConcurrentHashMap<>();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public enum Aggregate {
+        AVERAGE(Identifiers.AggregateFunction_Average),
+        MINIMUM(Identifiers.AggregateFunction_Minimum),
+        MAXIMUM(Identifiers.AggregateFunction_Maximum),
+        COUNT(Identifiers.AggregateFunction_Count),
+        INTERPOLATIVE(Identifiers.AggregateFunction_Interpolative);
+
+        private final NodeId nodeId;
+
+        Aggregate (NodeId nodeId){
+            this.nodeId = nodeId;
+        }
+
+        public NodeId getNodeId (){
+            return nodeId;
+        }
+
+        /**
+         * @return the aggregate of an AggregateFunction node, null if it isn't supported
+         */
+        public static Aggregate of (NodeId nodeId){
+            for (Aggregate aggregate : values()) {
+                if (aggregate.nodeId.equals(nodeId)) return aggregate;
+            }
+            return null;
+        }
+    }
+
+    private final TimeSeriesStore store;
+    // Coarsest first, guarded by this
+    private final Rollup[] rollups;
+
+    private static final class Rollup {
+        final long width;
+        long[] keys = new long[1024];
+        long[] counts = new long[1024];
+        double[] sums = new double[1024];
+        double[] mins = new double[1024];
+        double[] maxs = new double[1024];
+        int size;
+
+        Rollup (long width){
+            this.width = width;
+        }
+
+        void add (long timestamp, double value){
+            long key = Math.floorDiv(timestamp, width);
+            if (size == 0 || keys[size - 1] != key) {
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    counts = Arrays.copyOf(counts, size * 2);
+                    sums = Arrays.copyOf(sums, size * 2);
+                    mins = Arrays.copyOf(mins, size * 2);
+                    maxs = Arrays.copyOf(maxs, size * 2);
+                }
+                keys[size] = key;
+                counts[size] = 0;
+                sums[size] = 0;
+                mins[size] = Double.POSITIVE_INFINITY;
+                maxs[size] = Double.NEGATIVE_INFINITY;
+                size++;
+            }
+            int i = size - 1;
+            counts[i]++;
+            sums[i] += value;
+            if (value < mins[i]) mins[i] = value;
+            if (value > maxs[i]) maxs[i] = value;
+        }
+
+        /**
+         * Add the buckets of [fromMillis, toMillis), both multiples of width, to accumulator.
+         */
+        void merge (long fromMillis, long toMillis, Accumulator accumulator){
+            long toKey = Math.floorDiv(toMillis, width);
+            int i = Arrays.binarySearch(keys, 0, size, Math.floorDiv(fromMillis, width));
+            if (i < 0) i = -i - 1;
+            for (; i < size && keys[i] < toKey; i++) {
+                accumulator.merge(counts[i], sums[i], mins[i], maxs[i]);
+            }
+        }
+    }
+
+    private static final class Accumulator {
+        long count;
+        double sum;
+        double min;
+        double max;
+
+        void reset (){
+            count = 0;
+            sum = 0;
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+        }
+
+        void add (double value){
+            count++;
+            sum += value;
+            if (value < min) min = value;
+            if (value > max) max = value;
+        }
+
+        void merge (long count, double sum, double min, double max){
+            this.count += count;
+            this.sum += sum;
+            if (min < this.min) this.min = min;
+            if (max > this.max) this.max = max;
+        }
+
+        double get (Aggregate aggregate){
+            if (aggregate == Aggregate.COUNT) return count;
+            if (count == 0) return Double.NaN;
+            switch (aggregate) {
+                case AVERAGE: return sum / count;
+                case MINIMUM: return min;
+                case MAXIMUM: return max;
+                default: throw new IllegalArgumentException(aggregate + " isn't accumulated");
+            }
+        }
+    }
+
+    /**
+     * @param widthsMillis the rollup bucket widths, each a multiple of the next finer one
+     */
+    public AggregateEngine (TimeSeriesStore store, long... widthsMillis){
+        long[] widths = widthsMillis.clone();
+        Arrays.sort(widths);
+        for (int i = 1; i < widths.length; i++) {
+            if (widths[i] % widths[i - 1] != 0) {
+                throw new IllegalArgumentException(widths[i] + " ms isn't a multiple of " + widths[i - 1] + " ms");
+            }
+        }
+        this.store = store;
+        rollups = new Rollup[widths.length];
+        for (int i = 0; i < widths.length; i++) {
+            if (widths[i] <= 0) throw new IllegalArgumentException("widths must be positive: " + widths[i]);
+            rollups[widths.length - 1 - i] = new Rollup(widths[i]);
+        }
+        long start = System.nanoTime();
+        long points = store.query(Long.MIN_VALUE, Long.MAX_VALUE, false, (time, value) -> {
+            for (Rollup rollup : rollups) rollup.add(time, value);
+            return true;
+        });
+        logger.info("Rolled up {} points of {} in {} ms", points, store.getDirectory(),
+                    (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * @return the engine of store, built once per JVM with the widths of the history.rollupMillis system property
+     */
+    public static AggregateEngine open (TimeSeriesStore store){
+        return OPEN_ENGINES.computeIfAbsent(store, s -> new AggregateEngine(s, widthsFromSystemProperties()));
+    }
+
+    private static long[] widthsFromSystemProperties (){
+        String widths = System.getProperty("history.rollupMillis");
+        if (widths == null) return DEFAULT_WIDTHS_MILLIS;
+        return Arrays.stream(widths.split(",")).map(String::trim).filter(w -> !w.isEmpty())
+                     .mapToLong(Long::parseLong).toArray();
+    }
+
+    /**
+     * Append a point to the store and to the rollups.
+     * @return false if the store dropped the point for being older than the last one
+     */
+    public synchronized boolean append (long timestampMillis, double value){
+        if (!store.append(timestampMillis, value)) return false;
+        for (Rollup rollup : rollups) rollup.add(timestampMillis, value);
+        return true;
+    }
+
+    public TimeSeriesStore getStore (){
+        return store;
+    }
+
+    /**
+     * @return the number of intervals of intervalMillis in [fromMillis, toMillis), the last one may be shorter;
+     * 1 if intervalMillis isn't positive
+     */
+    public static int intervalCount (long fromMillis, long toMillis, long intervalMillis){
+        if (toMillis <= fromMillis) return 0;
+        if (intervalMillis <= 0) return 1;
+        long count = (toMillis - fromMillis + intervalMillis - 1) / intervalMillis;
+        if (count > Integer.MAX_VALUE) throw new IllegalArgumentException("too many intervals: " + count);
+        return (int) count;
+    }
+
+    /**
+     * Compute aggregate for every interval of [fromMillis, toMillis), using the rollups.
+     * @param out receives the value of each interval, NaN if the interval has no data; at least intervalCount() long
+     * @return the number of intervals
+     */
+    public int aggregate (Aggregate aggregate, long fromMillis, long toMillis, long intervalMillis, double[] out){
+        return compute(aggregate, fromMillis, toMillis, intervalMillis, out, true);
+    }
+
+    /**
+     * Same as aggregate(), from the raw points only, to compare with.
+     */
+    public int aggregateByScan (Aggregate aggregate, long fromMillis, long toMillis, long intervalMillis, double[] out){
+        return compute(aggregate, fromMillis, toMillis, intervalMillis, out, false);
+    }
+
+    private int compute (Aggregate aggregate, long fromMillis, long toMillis, long intervalMillis, double[] out,
+                         boolean useRollups){
+        int intervals = intervalCount(fromMillis, toMillis, intervalMillis);
+        if (out.length < intervals) {
+            throw new IllegalArgumentException(intervals + " intervals don't fit in " + out.length + " values");
+        }
+        long width = (intervalMillis <= 0) ? toMillis - fromMillis : intervalMillis;
+        Accumulator accumulator = new Accumulator();
+        for (int k = 0; k < intervals; k++) {
+            long start = fromMillis + k * width;
+            if (aggregate == Aggregate.INTERPOLATIVE) {
+                out[k] = valueAt(start);
+                continue;
+            }
+            accumulator.reset();
+            long end = Math.min(start + width, toMillis);
+            if (useRollups) accumulate(start, end, 0, accumulator);
+            else scan(start, end, accumulator);
+            out[k] = accumulator.get(aggregate);
+        }
+        return intervals;
+    }
+
+    /**
+     * Add [fromMillis, toMillis) to accumulator from the whole buckets of the rollups from level on, the remainders
+     * from the finer ones and finally from the raw points.
+     */
+    private void accumulate (long fromMillis, long toMillis, int level, Accumulator accumulator){
+        if (fromMillis >= toMillis) return;
+        for (int l = level; l < rollups.length; l++) {
+            long width = rollups[l].width;
+            long alignedFrom = -Math.floorDiv(-fromMillis, width) * width;
+            long alignedTo = Math.floorDiv(toMillis, width) * width;
+            if (alignedFrom < alignedTo) {
+                accumulate(fromMillis, alignedFrom, l + 1, accumulator);
+                synchronized (this) {
+                    rollups[l].merge(alignedFrom, alignedTo, accumulator);
+                }
+                accumulate(alignedTo, toMillis, l + 1, accumulator);
+                return;
+            }
+        }
+        scan(fromMillis, toMillis, accumulator);
+    }
+
+    private void scan (long fromMillis, long toMillis, Accumulator accumulator){
+        store.query(fromMillis, toMillis, false, (time, value) -> {
+            accumulator.add(value);
+            return true;
+        });
+    }
+
+    /**
+     * @return the value at time, interpolated between the points around it, the nearest point if there is only one
+     * side, NaN without any point
+     */
+    public double valueAt (long timeMillis){
+        long[] times = {Long.MIN_VALUE, Long.MIN_VALUE};
+        double[] values = {Double.NaN, Double.NaN};
+        store.query(Long.MIN_VALUE, timeMillis + 1, true, (time, value) -> {
+            times[0] = time;
+            values[0] = value;
+            return false;
+        });
+        if (times[0] == timeMillis) return values[0];
+        store.query(timeMillis, Long.MAX_VALUE, false, (time, value) -> {
+            times[1] = time;
+            values[1] = value;
+            return false;
+        });
+        if (times[0] == Long.MIN_VALUE) return values[1];
+        if (times[1] == Long.MIN_VALUE) return values[0];
+        double ratio = (double) (timeMillis - times[0]) / (times[1] - times[0]);
+        return values[0] + (values[1] - values[0]) * ratio;
+    }
+}
@@ -0,0 +1,90 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.stack.core.types.structured.Range;
+
+/**
+ * Deadband of a pushed data item: a value is notified only if it moved by more than the deadband from the last
+ * one notified to the item, or if its status changed. A percent deadband is resolved against the EURange of the
+ * node, as (high - low) * percent / 100.
+ * Counts the values offered and the ones let through, to measure the notification rate reduction.
+ */
+public class DeadbandFilter {
+
+    public enum Type { NONE, ABSOLUTE, PERCENT }
+
+    private final double deadband;
+
+    // Guarded by this
+    private boolean notified;
+    private double lastValue;
+    private long lastStatus;
+    private long offered;
+    private long passed;
+
+    /**
+     * @param deadband absolute change below or equal to which a value isn't notified
+     */
+    public DeadbandFilter (double deadband){
+        if (!(deadband >= 0)) throw new IllegalArgumentException("deadband must be positive: " + deadband);
+        this.deadband = deadband;
+    }
+
+    /**
+     * @return a filter of percent of euRange
+     */
+    public static DeadbandFilter percent (double percent, Range euRange){
+        if (euRange == null || euRange.getHigh() == null || euRange.getLow() == null) {
+            throw new IllegalArgumentException("a percent deadband needs an EURange");
+        }
+        if (percent < 0 || percent > 100) throw new IllegalArgumentException("percent out of [0, 100]: " + percent);
+        return new DeadbandFilter((euRange.getHigh() - euRange.getLow()) * percent / 100.0);
+    }
+
+    /**
+     * Build the filter set by the deadband.type (none, absolute or percent) and deadband.value system properties.
+     * @return null for none
+     */
+    public static DeadbandFilter fromSystemProperties (Range euRange){
+        Type type = Type.valueOf(System.getProperty("deadband.type", "none").trim().toUpperCase());
+        double value = Double.parseDouble(System.getProperty("deadband.value", "0.0"));
+        switch (type) {
+            case ABSOLUTE:
+                return new DeadbandFilter(value);
+            case PERCENT:
+                return percent(value, euRange);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return true if value has to be notified, in which case it becomes the reference of the next ones
+     */
+    public synchronized boolean test (double value, long status){
+        offered++;
+        // NaN compares false, so it passes unless the last one was NaN too
+        boolean pass = !notified
+                       || status != lastStatus
+                       || !(Math.abs(value - lastValue) <= deadband)
+                          && !(Double.isNaN(value) && Double.isNaN(lastValue));
+        if (pass) {
+            notified = true;
+            lastValue = value;
+            lastStatus = status;
+            passed++;
+        }
+        return pass;
+    }
+
+    public double getDeadband (){
+        return deadband;
+    }
+
+    public synchronized long getOffered (){
+        return offered;
+    }
+
+    public synchronized long getPassed (){
+        return passed;
+    }
+}
@@ -8,27 +8,48 @@ import org.eclipse.milo.opcua.sdk.server.api.DataItem;
 import org.eclipse.milo.opcua.sdk.server.api.ManagedNamespace;
 import org.eclipse.milo.opcua.sdk.server.api.MonitoredItem;
 import org.eclipse.milo.opcua.sdk.server.api.nodes.VariableNode;
+import org.eclipse.milo.opcua.sdk.server.api.services.AttributeHistoryServices.HistoryReadContext;
 import org.eclipse.milo.opcua.sdk.server.model.nodes.objects.SystemStatusChangeEventNode;
 import org.eclipse.milo.opcua.sdk.server.model.nodes.variables.AnalogItemNode;
 import org.eclipse.milo.opcua.sdk.server.nodes.AttributeContext;
+import org.eclipse.milo.opcua.sdk.server.nodes.AttributeObserver;
 import org.eclipse.milo.opcua.sdk.server.nodes.UaFolderNode;
 import org.eclipse.milo.opcua.sdk.server.nodes.UaVariableNode;
 import org.eclipse.milo.opcua.sdk.server.nodes.delegates.AttributeDelegate;
 import org.eclipse.milo.opcua.sdk.server.nodes.delegates.AttributeDelegateChain;
 import org.eclipse.milo.opcua.sdk.server.util.SubscriptionModel;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
 import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
 import org.eclipse.milo.opcua.stack.core.UaException;
 import org.eclipse.milo.opcua.stack.core.types.builtin.*;
 import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.ServerState;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.HistoryData;
+import org.eclipse.milo.opcua.stack.core.types.structured.HistoryReadDetails;
+import org.eclipse.milo.opcua.stack.core.types.structured.HistoryReadResult;
+import org.eclipse.milo.opcua.stack.core.types.structured.HistoryReadValueId;
 import org.eclipse.milo.opcua.stack.core.types.structured.Range;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadProcessedDetails;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadRawModifiedDetails;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.*;
 
@@ -36,6 +57,9 @@ public class ExampleNamespace extends ManagedNamespace {
 
     static final String NAMESPACE_URI = "urn:eclipse:milo:hello-world";
 
+    // Values of a processed HistoryRead answer, which has no continuation point
+    private static final long MAX_PROCESSED_INTERVALS = 100_000;
+
     private static final Object[][] STATIC_SCALAR_NODES = new Object[][]{
         {"Boolean", Identifiers.Boolean, new Variant(false)},
         {"Byte", Identifiers.Byte, new Variant(ubyte(0x00))},
@@ -89,11 +113,59 @@ public class ExampleNamespace extends ManagedNamespace {
 
     private final Random random = new Random();
 
+    // Sampled model only serves the nodes whose value is computed on read
     private final SubscriptionModel subscriptionModel;
 
+    private final PushSubscriptionModel pushModel;
+
+    private final NodeHandleRegistry handles;
+
+    private NodeHandleRegistry.Handle<AnalogItemNode> analogValue;
+
+    // Off-heap values of the primitive nodes, the list maps each store tag index to its node
+    private final TagValueStore store = new TagValueStore();
+    private final List<NodeId> tags = new CopyOnWriteArrayList<>();
+
+    private int analogValueTag;
+
+    // Filled while building the nodes, read-only afterwards
+    private final Map<NodeId, NodeMetrics> metrics = new LinkedHashMap<>();
+    private final InstrumentingDelegate.Switch instrumentation = InstrumentingDelegate.Switch.fromSystemProperties();
+
+    // External accesses of the nodes of this namespace, stopped with it
+    private final AccessAuditor auditor = AccessAuditor.fromSystemProperties();
+
+    // Nodes keeping their value themselves, replicated along with the store; read-only after startup
+    private final Map<NodeId, UaVariableNode> replicatedNodes = new LinkedHashMap<>();
+
+    // Set while this namespace is the primary of a redundant set
+    private volatile ValueReplicator replicator;
+
+    // History and rollups of the historized Double tags by tag, null for the others; set once by enableHistory()
+    private volatile AggregateEngine[] historyByTag = new AggregateEngine[0];
+    private final Map<NodeId, AggregateEngine> historized = new ConcurrentHashMap<>();
+
+    private final AttributeObserver replicationObserver = (node, attributeId, value) -> {
+        ValueReplicator current = replicator;
+        if (current != null && attributeId == AttributeId.Value) current.onNodeWrite(node.getNodeId(), (DataValue) value);
+    };
+
     ExampleNamespace (OpcUaServer server) {
         super(server, NAMESPACE_URI);
         subscriptionModel = new SubscriptionModel(server, this);
+        pushModel = new PushSubscriptionModel(server);
+        handles = new NodeHandleRegistry(server);
+        // Every store write, from the devices, the Write service or the replication, is historized the same way
+        // on every server of the set, and streamed to the replicator while this namespace is the primary
+        store.setWriteListener(this::onTagWrite);
+    }
+
+    private void onTagWrite (int tag, long bits, long status, long sourceTime, long serverTime) {
+        if (store.getType(tag) == TagValueStore.ValueType.DOUBLE) {
+            historize(tag, toJavaTime(sourceTime), Double.longBitsToDouble(bits));
+        }
+        ValueReplicator current = replicator;
+        if (current != null) current.onTagWrite(tag, bits, status, sourceTime, serverTime);
     }
 
     @Override
@@ -121,6 +193,383 @@ public class ExampleNamespace extends ManagedNamespace {
 
         // Add the rest of the nodes
         addVariableNodes(folderNode);
+
+        // Resolve the nodes used on hot paths once
+        analogValue = handles.resolve(newNodeId("HelloWorld/DataAccess/AnalogValue"), AnalogItemNode.class);
+        analogValueTag = bindToStore(analogValue.get(), TagValueStore.ValueType.DOUBLE,
+                                     delegate -> instrumented(analogValue.getNodeId(), delegate));
+        // Noisy samples below the deadband aren't notified to the items that didn't ask for a deadband themselves
+        pushModel.setDefaultDeadband(analogValue.getNodeId(),
+                                     DeadbandFilter.fromSystemProperties(analogValue.get().getEURange()));
+
+        addDiagnosticsNodes(folderNode);
+    }
+
+    @Override
+    protected void onShutdown() {
+        auditor.shutdown();
+        super.onShutdown();
+    }
+
+    /**
+     * Wrap delegate so that the value reads and writes of nodeId are measured and published under Diagnostics.
+     */
+    private AttributeDelegate instrumented (NodeId nodeId, AttributeDelegate delegate) {
+        return new InstrumentingDelegate(metrics.computeIfAbsent(nodeId, NodeMetrics::new), instrumentation, delegate);
+    }
+
+    /**
+     * Move the current value of node into the store and serve it from there from now on.
+     * @param wrapper decorates the store delegate, e.g. with logging
+     * @return the tag index of node
+     */
+    private synchronized int bindToStore (UaVariableNode node,
+                                          TagValueStore.ValueType type,
+                                          Function<AttributeDelegate, AttributeDelegate> wrapper) {
+        int tag = store.addTag(type);
+        tags.add(node.getNodeId());
+        try {
+            long now = DateTime.now().getUtcTime();
+            store.write(tag, StoreValueDelegate.toBits(type, node.getValue().getValue().getValue()),
+                        StatusCode.GOOD.getValue(), now, now);
+        }
+        catch (UaException e) {
+            logger.error("Can't store the initial value of {}: {}", node.getNodeId(), e.getMessage(), e);
+        }
+        node.setAttributeDelegate(wrapper.apply(new StoreValueDelegate(store, tag, pushModel)));
+        pushModel.register(node, () -> StoreValueDelegate.toDataValue(store, tag));
+        return tag;
+    }
+
+    public int getAnalogValueTag () {
+        return analogValueTag;
+    }
+
+    /**
+     * Write a sample coming from the ingestion stage into a Double tag.
+     * @param timestamp source timestamp in milliseconds since the Java epoch
+     */
+    public void writeSample (int tag, long timestamp, double value) {
+        if (store.getType(tag) != TagValueStore.ValueType.DOUBLE) {
+            throw new IllegalArgumentException("tag " + tag + " isn't a Double tag");
+        }
+        NodeId nodeId = tags.get(tag);
+        // Samples don't go through the node delegates, measure them here like a write of the node
+        NodeMetrics nodeMetrics = instrumentation.isEnabled() ? metrics.get(nodeId) : null;
+        long start = (nodeMetrics != null) ? System.nanoTime() : 0;
+
+        store.writeDouble(tag, value, StatusCode.GOOD.getValue(), toUtcTime(timestamp), DateTime.now().getUtcTime());
+
+        // A DataValue is only built if somebody is listening
+        if (pushModel.isMonitored(nodeId)) pushModel.push(nodeId, StoreValueDelegate.toDataValue(store, tag));
+
+        if (nodeMetrics != null) nodeMetrics.getWriteLatency().record(System.nanoTime() - start);
+    }
+
+    /**
+     * Stream every value change of this namespace to replicator, or stop streaming them when null.
+     */
+    void setReplicator (ValueReplicator replicator) {
+        this.replicator = replicator;
+    }
+
+    /**
+     * Add the current value of every replicated tag and node to snapshot.
+     */
+    void snapshot (ReplicationBatch snapshot) {
+        TagValueStore.Row row = new TagValueStore.Row();
+        for (int tag = 0; tag < tags.size(); tag++) {
+            store.readRow(tag, row);
+            snapshot.addTag(tag, row.bits, row.status, row.sourceTime, row.serverTime);
+        }
+        replicatedNodes.forEach((nodeId, node) -> snapshot.addNode(nodeId, node.getValue()));
+    }
+
+    /**
+     * Apply the changes replicated from the primary. Every server builds this namespace the same way, so tag
+     * indexes and node ids match across the set.
+     */
+    void applyReplicated (ReplicationBatch batch) {
+        for (int i = 0; i < batch.getTagCount(); i++) {
+            int tag = batch.getTag(i);
+            if (tag >= tags.size()) {
+                throw new IllegalArgumentException("replicated tag " + tag + " doesn't exist, " + tags.size() + " tags");
+            }
+            // Historized by the write listener, so that a standby still has the history once promoted
+            store.write(tag, batch.getBits(i), batch.getStatus(i), batch.getSourceTime(i), batch.getServerTime(i));
+            NodeId nodeId = tags.get(tag);
+            if (pushModel.isMonitored(nodeId)) pushModel.push(nodeId, StoreValueDelegate.toDataValue(store, tag));
+        }
+        List<NodeId> nodeIds = batch.getNodeIds();
+        for (int i = 0; i < nodeIds.size(); i++) {
+            UaVariableNode node = replicatedNodes.get(nodeIds.get(i));
+            // The observers of the node, push model included, see the change
+            if (node != null) node.setValue(batch.getNodeValues().get(i));
+        }
+    }
+
+    /**
+     * Replicate the value of a node which keeps it itself.
+     */
+    private void replicate (UaVariableNode node) {
+        replicatedNodes.put(node.getNodeId(), node);
+        node.addAttributeObserver(replicationObserver);
+    }
+
+    private static long toUtcTime (long javaMillis) {
+        // OPC UA DateTime counts 100 ns intervals since 1601-01-01
+        return (javaMillis + 11644473600000L) * 10000L;
+    }
+
+    private static long toJavaTime (long utcTime) {
+        return utcTime / 10000L - 11644473600000L;
+    }
+
+    /**
+     * Keep the history of the Double nodes listed in the history.nodes system property (comma separated paths below
+     * the namespace, AnalogValue by default), each in its own store below directory. The nodes become Historizing
+     * and readable with HistoryRead, raw or processed by the AggregateEngine rollups.
+     */
+    void enableHistory (Path directory) {
+        String paths = System.getProperty("history.nodes", "HelloWorld/DataAccess/AnalogValue");
+        AggregateEngine[] byTag = new AggregateEngine[tags.size()];
+        for (String path : paths.split(",")) {
+            if (path.trim().isEmpty()) continue;
+            NodeId nodeId = newNodeId(path.trim());
+            int tag = tags.indexOf(nodeId);
+            if (tag < 0 || store.getType(tag) != TagValueStore.ValueType.DOUBLE) {
+                logger.warn("Can't historize {}: only the stored Double nodes can be", nodeId);
+                continue;
+            }
+            AggregateEngine history = AggregateEngine.open(
+                TimeSeriesStore.open(directory.resolve(path.trim().replace('/', '_'))));
+            byTag[tag] = history;
+            historized.put(nodeId, history);
+            getNodeManager().getNode(nodeId).ifPresent(node -> {
+                UaVariableNode variable = (UaVariableNode) node;
+                variable.setHistorizing(true);
+                variable.setAccessLevel(ubyte(variable.getAccessLevel().intValue() | AccessLevel.HistoryRead.getValue()));
+                variable.setUserAccessLevel(
+                    ubyte(variable.getUserAccessLevel().intValue() | AccessLevel.HistoryRead.getValue()));
+            });
+        }
+        historyByTag = byTag;
+    }
+
+    private void historize (int tag, long timestamp, double value) {
+        AggregateEngine[] byTag = historyByTag;
+        if (tag < byTag.length && byTag[tag] != null) byTag[tag].append(timestamp, value);
+    }
+
+    /**
+     * Write the history kept in memory to disk, e.g. when the server stops.
+     */
+    void flushHistory () {
+        historized.values().forEach(history -> history.getStore().flush());
+    }
+
+    public TimeSeriesStore getHistory (NodeId nodeId) {
+        AggregateEngine history = historized.get(nodeId);
+        return (history != null) ? history.getStore() : null;
+    }
+
+    public AggregateEngine getAggregates (NodeId nodeId) {
+        return historized.get(nodeId);
+    }
+
+    @Override
+    public void historyRead(HistoryReadContext context,
+                            HistoryReadDetails readDetails,
+                            TimestampsToReturn timestamps,
+                            List<HistoryReadValueId> readValueIds) {
+        List<HistoryReadResult> results = new ArrayList<>(readValueIds.size());
+        for (int i = 0; i < readValueIds.size(); i++) {
+            try {
+                if (readDetails instanceof ReadProcessedDetails) {
+                    results.add(readProcessed((ReadProcessedDetails) readDetails, i, timestamps, readValueIds.get(i)));
+                }
+                else results.add(readRaw(readDetails, timestamps, readValueIds.get(i)));
+            }
+            catch (UaException e) {
+                results.add(new HistoryReadResult(e.getStatusCode(), null, null));
+            }
+        }
+        context.success(results);
+    }
+
+    /**
+     * Serve ReadRawModifiedDetails, raw values only, from the history of a node. Bounds aren't returned, except
+     * that equal start and end times return the values at that timestamp.
+     * Continuation points carry the timestamp to resume at and how many values of that timestamp were returned.
+     */
+    private HistoryReadResult readRaw (HistoryReadDetails readDetails,
+                                       TimestampsToReturn timestamps,
+                                       HistoryReadValueId readValueId) throws UaException {
+        if (!(readDetails instanceof ReadRawModifiedDetails) || ((ReadRawModifiedDetails) readDetails).getIsReadModified()) {
+            throw new UaException(StatusCodes.Bad_HistoryOperationUnsupported);
+        }
+        AggregateEngine aggregates = historized.get(readValueId.getNodeId());
+        if (aggregates == null) throw new UaException(StatusCodes.Bad_HistoryOperationUnsupported);
+        TimeSeriesStore history = aggregates.getStore();
+
+        ReadRawModifiedDetails details = (ReadRawModifiedDetails) readDetails;
+        boolean hasStart = details.getStartTime() != null && details.getStartTime().getUtcTime() > 0;
+        boolean hasEnd = details.getEndTime() != null && details.getEndTime().getUtcTime() > 0;
+        long limit = (details.getNumValuesPerNode() == null) ? 0 : details.getNumValuesPerNode().longValue();
+        if (!hasStart && !hasEnd) throw new UaException(StatusCodes.Bad_InvalidTimestampArgument);
+        if ((!hasStart || !hasEnd) && limit == 0) throw new UaException(StatusCodes.Bad_InvalidTimestampArgument);
+
+        // Queries run over [from, to), newest first when the range is given backwards or only its end is
+        long start = hasStart ? details.getStartTime().getJavaTime() : 0;
+        long end = hasEnd ? details.getEndTime().getJavaTime() : 0;
+        boolean reverse;
+        long from;
+        long to;
+        if (!hasStart) {
+            reverse = true;
+            from = Long.MIN_VALUE;
+            to = end + 1;
+        }
+        else if (!hasEnd) {
+            reverse = false;
+            from = start;
+            to = Long.MAX_VALUE;
+        }
+        else if (start < end) {
+            reverse = false;
+            from = start;
+            to = end;
+        }
+        else if (start == end) {
+            // Equal bounds ask for the values at exactly that timestamp
+            reverse = false;
+            from = start;
+            to = end + 1;
+        }
+        else {
+            reverse = true;
+            from = end + 1;
+            to = start + 1;
+        }
+
+        int skip = 0;
+        ByteString continuationPoint = readValueId.getContinuationPoint();
+        if (continuationPoint != null && continuationPoint.isNotNull()) {
+            ByteBuffer resume = ByteBuffer.wrap(continuationPoint.bytesOrEmpty());
+            if (resume.remaining() != 12) throw new UaException(StatusCodes.Bad_ContinuationPointInvalid);
+            long resumeAt = resume.getLong();
+            skip = resume.getInt();
+            if (reverse) to = resumeAt + 1;
+            else from = resumeAt;
+        }
+
+        List<DataValue> values = new ArrayList<>();
+        long[] next = {Long.MIN_VALUE};
+        int[] toSkip = {skip};
+        history.query(from, to, reverse, (time, value) -> {
+            if (toSkip[0] > 0) {
+                toSkip[0]--;
+                return true;
+            }
+            if (limit > 0 && values.size() == limit) {
+                next[0] = time;
+                return false;
+            }
+            values.add(historyValue(time, value, timestamps));
+            return true;
+        });
+
+        ByteString nextPoint = null;
+        if (next[0] != Long.MIN_VALUE) {
+            // Values of the resume timestamp already returned, at the tail of this page
+            int returned = 0;
+            for (int i = values.size() - 1; i >= 0 && sourceJavaTime(values.get(i)) == next[0]; i--) returned++;
+            if (returned == values.size() && skip > 0 && (reverse ? to - 1 : from) == next[0]) returned += skip;
+            nextPoint = ByteString.of(ByteBuffer.allocate(12).putLong(next[0]).putInt(returned).array());
+        }
+        HistoryData data = new HistoryData(values.toArray(new DataValue[0]));
+        return new HistoryReadResult(
+            StatusCode.GOOD,
+            nextPoint,
+            ExtensionObject.encode(getServer().getSerializationContext(), data)
+        );
+    }
+
+    /**
+     * Serve ReadProcessedDetails from the rollups of a node: one value per processing interval of [start, end),
+     * stamped with the interval start, Bad_NoData for an interval without data. A processing interval of 0 makes
+     * one interval of the whole range. Ranges must go forward and the aggregate configuration is ignored.
+     */
+    private HistoryReadResult readProcessed (ReadProcessedDetails details,
+                                             int index,
+                                             TimestampsToReturn timestamps,
+                                             HistoryReadValueId readValueId) throws UaException {
+        AggregateEngine aggregates = historized.get(readValueId.getNodeId());
+        if (aggregates == null) throw new UaException(StatusCodes.Bad_HistoryOperationUnsupported);
+        NodeId[] aggregateTypes = details.getAggregateType();
+        if (aggregateTypes == null || index >= aggregateTypes.length) {
+            throw new UaException(StatusCodes.Bad_AggregateListMismatch);
+        }
+        AggregateEngine.Aggregate aggregate = AggregateEngine.Aggregate.of(aggregateTypes[index]);
+        if (aggregate == null) throw new UaException(StatusCodes.Bad_AggregateNotSupported);
+        if (details.getStartTime() == null || details.getEndTime() == null
+            || details.getStartTime().getJavaTime() >= details.getEndTime().getJavaTime()) {
+            throw new UaException(StatusCodes.Bad_InvalidTimestampArgument);
+        }
+
+        long start = details.getStartTime().getJavaTime();
+        long end = details.getEndTime().getJavaTime();
+        long interval = (details.getProcessingInterval() == null) ? 0 : details.getProcessingInterval().longValue();
+        long intervals = (interval <= 0) ? 1 : (end - start + interval - 1) / interval;
+        if (intervals > MAX_PROCESSED_INTERVALS) throw new UaException(StatusCodes.Bad_ResponseTooLarge);
+
+        double[] results = new double[(int) intervals];
+        aggregates.aggregate(aggregate, start, end, interval, results);
+        DataValue[] values = new DataValue[results.length];
+        for (int k = 0; k < results.length; k++) {
+            long intervalStart = start + k * interval;
+            if (Double.isNaN(results[k])) {
+                values[k] = historyValue(intervalStart, Variant.NULL_VALUE, new StatusCode(StatusCodes.Bad_NoData), timestamps);
+            }
+            else {
+                Variant value = (aggregate == AggregateEngine.Aggregate.COUNT)
+                    ? new Variant(uint((long) results[k]))
+                    : new Variant(results[k]);
+                values[k] = historyValue(intervalStart, value, StatusCode.GOOD, timestamps);
+            }
+        }
+        return new HistoryReadResult(
+            StatusCode.GOOD,
+            null,
+            ExtensionObject.encode(getServer().getSerializationContext(), new HistoryData(values))
+        );
+    }
+
+    private static DataValue historyValue (long time, double value, TimestampsToReturn timestamps) {
+        return historyValue(time, new Variant(value), StatusCode.GOOD, timestamps);
+    }
+
+    private static DataValue historyValue (long time, Variant value, StatusCode status, TimestampsToReturn timestamps) {
+        DateTime sourceTime = new DateTime(toUtcTime(time));
+        // The history only keeps the source time, Server and Both get it as the server time too
+        boolean source = timestamps != TimestampsToReturn.Server && timestamps != TimestampsToReturn.Neither;
+        boolean server = timestamps == TimestampsToReturn.Server || timestamps == TimestampsToReturn.Both;
+        return new DataValue(value, status, source ? sourceTime : null, server ? sourceTime : null);
+    }
+
+    private static long sourceJavaTime (DataValue value) {
+        DateTime time = (value.getSourceTime() != null) ? value.getSourceTime() : value.getServerTime();
+        return (time != null) ? time.getJavaTime() : Long.MIN_VALUE;
+    }
+
+    /**
+     * Remove a node of this namespace, keeping the handles and the push model consistent.
+     */
+    public void removeNode (NodeId nodeId) {
+        getNodeManager().removeNode(nodeId).ifPresent(node -> {
+            if (node instanceof UaVariableNode) pushModel.unregister((UaVariableNode) node);
+            handles.invalidate(nodeId);
+        });
     }
 
     public SystemStatusChangeEventNode buildStatusChangeEventNode (ServerState value){
@@ -180,8 +629,10 @@ public class ExampleNamespace extends ManagedNamespace {
                 .build();
 
             node.setValue(new DataValue(variant));
-            node.setAttributeDelegate(new ValueLoggingDelegate());
+            node.setAttributeDelegate(instrumented(node.getNodeId(), new AccessAuditDelegate(auditor)));
             getNodeManager().addNode(node);
+            pushModel.register(node);
+            replicate(node);
             arrayTypesFolder.addOrganizes(node);
         }
     }
@@ -214,25 +665,36 @@ public class ExampleNamespace extends ManagedNamespace {
 
             node.setValue(new DataValue(variant));
 
-            node.setAttributeDelegate(new ValueLoggingDelegate());
-
             getNodeManager().addNode(node);
+
+            // Values of the primitive concrete types live off-heap, the others stay in the node
+            TagValueStore.ValueType storeType = StoreValueDelegate.typeOf(typeId);
+            if (storeType != null) {
+                bindToStore(node, storeType,
+                            delegate -> instrumented(node.getNodeId(), new AccessAuditDelegate(auditor, delegate)));
+            }
+            else {
+                node.setAttributeDelegate(instrumented(node.getNodeId(), new AccessAuditDelegate(auditor)));
+                pushModel.register(node);
+                replicate(node);
+            }
             scalarTypesFolder.addOrganizes(node);
         }
     }
 
     public void setAnalogValue (double value){
-        ((AnalogItemNode) getServer().getAddressSpaceManager()
-                   .getManagedNode(newNodeId("HelloWorld/DataAccess/AnalogValue"))
-                   .get()).setValue(new DataValue(new Variant(value)));
+        writeSample(analogValueTag, System.currentTimeMillis(), value);
     }
 
     public Double getAnalogValue () {
-        Object value = ((AnalogItemNode) getServer().getAddressSpaceManager()
-                .getManagedNode(newNodeId("HelloWorld/DataAccess/AnalogValue"))
-                .get()).getValue().getValue().getValue();
+        return store.readDouble(analogValueTag);
+    }
 
-        return (value instanceof Double) ? (Double) value : -1.0;
+    /**
+     * @return the deadband applied to the AnalogValue items without a deadband of their own, NaN if none
+     */
+    public double getAnalogValueDeadband () {
+        return pushModel.getDefaultDeadband(analogValue.getNodeId());
     }
 
     private void addDynamicNodes(UaFolderNode rootNode) {
@@ -270,10 +732,10 @@ public class ExampleNamespace extends ManagedNamespace {
                         return new DataValue(new Variant(random.nextBoolean()));
                     }
                 },
-                ValueLoggingDelegate::new
+                parent -> new AccessAuditDelegate(auditor, parent)
             );
 
-            node.setAttributeDelegate(delegate);
+            node.setAttributeDelegate(instrumented(node.getNodeId(), delegate));
 
             getNodeManager().addNode(node);
             dynamicFolder.addOrganizes(node);
@@ -303,10 +765,10 @@ public class ExampleNamespace extends ManagedNamespace {
                         return new DataValue(new Variant(random.nextInt()));
                     }
                 },
-                ValueLoggingDelegate::new
+                parent -> new AccessAuditDelegate(auditor, parent)
             );
 
-            node.setAttributeDelegate(delegate);
+            node.setAttributeDelegate(instrumented(node.getNodeId(), delegate));
 
             getNodeManager().addNode(node);
             dynamicFolder.addOrganizes(node);
@@ -336,10 +798,10 @@ public class ExampleNamespace extends ManagedNamespace {
                         return new DataValue(new Variant(random.nextDouble()));
                     }
                 },
-                ValueLoggingDelegate::new
+                parent -> new AccessAuditDelegate(auditor, parent)
             );
 
-            node.setAttributeDelegate(delegate);
+            node.setAttributeDelegate(instrumented(node.getNodeId(), delegate));
 
             getNodeManager().addNode(node);
             dynamicFolder.addOrganizes(node);
@@ -380,23 +842,116 @@ public class ExampleNamespace extends ManagedNamespace {
         }
     }
 
+    private void addDiagnosticsNodes(UaFolderNode rootNode) {
+        UaFolderNode diagnosticsFolder = new UaFolderNode(
+            getNodeContext(),
+            newNodeId("HelloWorld/Diagnostics"),
+            newQualifiedName("Diagnostics"),
+            LocalizedText.english("Diagnostics")
+        );
+
+        getNodeManager().addNode(diagnosticsFolder);
+        rootNode.addOrganizes(diagnosticsFolder);
+
+        // Switch to turn the instrumentation on and off at runtime
+        UaVariableNode enabledNode = addDiagnosticVariable(
+            diagnosticsFolder, "Enabled", Identifiers.Boolean, instrumentation::isEnabled);
+        enabledNode.setAccessLevel(ubyte(AccessLevel.getMask(AccessLevel.READ_WRITE)));
+        enabledNode.setUserAccessLevel(ubyte(AccessLevel.getMask(AccessLevel.READ_WRITE)));
+        enabledNode.setAttributeDelegate(new AttributeDelegate() {
+            @Override
+            public DataValue getValue(AttributeContext context, VariableNode node) throws UaException {
+                return new DataValue(new Variant(instrumentation.isEnabled()));
+            }
+
+            @Override
+            public void setValue(AttributeContext context, VariableNode node, DataValue value) throws UaException {
+                Object enabled = value.getValue().getValue();
+                if (!(enabled instanceof Boolean)) throw new UaException(StatusCodes.Bad_TypeMismatch);
+                instrumentation.setEnabled((Boolean) enabled);
+            }
+        });
+
+        // One folder per instrumented node, named after its path below HelloWorld
+        for (NodeMetrics nodeMetrics : metrics.values()) {
+            String path = nodeMetrics.getNodeId().getIdentifier().toString().substring("HelloWorld/".length());
+            UaFolderNode nodeFolder = new UaFolderNode(
+                getNodeContext(),
+                newNodeId("HelloWorld/Diagnostics/" + path),
+                newQualifiedName(path),
+                LocalizedText.english(path)
+            );
+            getNodeManager().addNode(nodeFolder);
+            diagnosticsFolder.addOrganizes(nodeFolder);
+
+            LatencyHistogram reads = nodeMetrics.getReadLatency();
+            LatencyHistogram writes = nodeMetrics.getWriteLatency();
+            addDiagnosticVariable(nodeFolder, "ReadCount", Identifiers.Int64, reads::getCount);
+            addDiagnosticVariable(nodeFolder, "WriteCount", Identifiers.Int64, writes::getCount);
+            addDiagnosticVariable(nodeFolder, "ReadLatencyMeanMicros", Identifiers.Double,
+                                  () -> reads.getMeanNanos() / 1000.0);
+            addDiagnosticVariable(nodeFolder, "ReadLatencyP50Micros", Identifiers.Double,
+                                  () -> reads.getPercentileNanos(50) / 1000.0);
+            addDiagnosticVariable(nodeFolder, "ReadLatencyP99Micros", Identifiers.Double,
+                                  () -> reads.getPercentileNanos(99) / 1000.0);
+            addDiagnosticVariable(nodeFolder, "WriteLatencyMeanMicros", Identifiers.Double,
+                                  () -> writes.getMeanNanos() / 1000.0);
+            addDiagnosticVariable(nodeFolder, "WriteLatencyP99Micros", Identifiers.Double,
+                                  () -> writes.getPercentileNanos(99) / 1000.0);
+        }
+    }
+
+    /**
+     * Add a read-only variable whose value is computed on every read, and therefore sampled when subscribed.
+     */
+    private UaVariableNode addDiagnosticVariable(UaFolderNode folder, String name, NodeId typeId, Supplier<Object> value) {
+        UaVariableNode node = new UaVariableNode.UaVariableNodeBuilder(getNodeContext())
+            .setNodeId(newNodeId(folder.getNodeId().getIdentifier() + "/" + name))
+            .setAccessLevel(ubyte(AccessLevel.getMask(AccessLevel.READ_ONLY)))
+            .setUserAccessLevel(ubyte(AccessLevel.getMask(AccessLevel.READ_ONLY)))
+            .setBrowseName(newQualifiedName(name))
+            .setDisplayName(LocalizedText.english(name))
+            .setDataType(typeId)
+            .setTypeDefinition(Identifiers.BaseDataVariableType)
+            .build();
+
+        node.setAttributeDelegate(new AttributeDelegate() {
+            @Override
+            public DataValue getValue(AttributeContext context, VariableNode node) throws UaException {
+                return new DataValue(new Variant(value.get()));
+            }
+        });
+
+        getNodeManager().addNode(node);
+        folder.addOrganizes(node);
+        return node;
+    }
+
     @Override
     public void onDataItemsCreated(List<DataItem> dataItems) {
-        subscriptionModel.onDataItemsCreated(dataItems);
+        Map<Boolean, List<DataItem>> items = dataItems.stream().collect(Collectors.partitioningBy(pushModel::accepts));
+        pushModel.onDataItemsCreated(items.get(true));
+        subscriptionModel.onDataItemsCreated(items.get(false));
     }
 
     @Override
     public void onDataItemsModified(List<DataItem> dataItems) {
-        subscriptionModel.onDataItemsModified(dataItems);
+        Map<Boolean, List<DataItem>> items = dataItems.stream().collect(Collectors.partitioningBy(pushModel::accepts));
+        pushModel.onDataItemsModified(items.get(true));
+        subscriptionModel.onDataItemsModified(items.get(false));
     }
 
     @Override
     public void onDataItemsDeleted(List<DataItem> dataItems) {
-        subscriptionModel.onDataItemsDeleted(dataItems);
+        Map<Boolean, List<DataItem>> items = dataItems.stream().collect(Collectors.partitioningBy(pushModel::accepts));
+        pushModel.onDataItemsDeleted(items.get(true));
+        subscriptionModel.onDataItemsDeleted(items.get(false));
     }
 
     @Override
     public void onMonitoringModeChanged(List<MonitoredItem> monitoredItems) {
+        // Each model ignores the items it doesn't own
+        pushModel.onMonitoringModeChanged(monitoredItems);
         subscriptionModel.onMonitoringModeChanged(monitoredItems);
     }
 
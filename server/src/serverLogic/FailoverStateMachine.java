@@ -0,0 +1,117 @@
+package serverLogic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Failover states of a RedundantServerSet, moved forward by the completion of the server and client futures.
+ * The time spent before every transition is recorded per (from, to) pair, and the failover time from a primary
+ * announcing its shutdown to its successor being active is recorded on its own.
+ */
+public class FailoverStateMachine {
+
+    public enum State {
+        // Nothing started yet
+        IDLE,
+        // A server is starting as primary
+        STARTING,
+        // The primary serves, the standby watches it
+        ACTIVE,
+        // The primary announced its shutdown and is stopping
+        DRAINING,
+        // The primary is gone, its successor is being chosen
+        PROMOTING,
+        // No server left or the set was shut down
+        STOPPED;
+
+        private EnumSet<State> next;
+
+        static {
+            IDLE.next = EnumSet.of(STARTING, STOPPED);
+            STARTING.next = EnumSet.of(ACTIVE, PROMOTING, STOPPED);
+            ACTIVE.next = EnumSet.of(DRAINING, STOPPED);
+            DRAINING.next = EnumSet.of(PROMOTING, STOPPED);
+            PROMOTING.next = EnumSet.of(STARTING, STOPPED);
+            STOPPED.next = EnumSet.noneOf(State.class);
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String name;
+    private State state = State.IDLE;
+    private long enteredNanos = System.nanoTime();
+    private long failureNanos;
+
+    private final Map<String, LatencyHistogram> transitionLatency = new ConcurrentHashMap<>();
+    private final LatencyHistogram failoverLatency = new LatencyHistogram();
+    private final CompletableFuture<FailoverStateMachine> stopped = new CompletableFuture<>();
+
+    public FailoverStateMachine (String name){
+        this.name = name;
+    }
+
+    /**
+     * Move to the given state.
+     * @param serverId the server the transition is about, for the logs
+     * @throws IllegalStateException if the current state can't lead to it
+     */
+    public synchronized FailoverStateMachine transition (State to, String serverId){
+        if (!state.next.contains(to)) {
+            throw new IllegalStateException(name + ": can't go from " + state + " to " + to + " for " + serverId);
+        }
+        long now = System.nanoTime();
+        long elapsed = now - enteredNanos;
+        transitionLatency.computeIfAbsent(key(state, to), k -> new LatencyHistogram()).record(elapsed);
+        logger.info("{}: {} -> {} for {} after {} us", name, state, to, serverId, elapsed / 1000);
+
+        if (to == State.DRAINING) failureNanos = now;
+        if (to == State.ACTIVE && failureNanos != 0) {
+            failoverLatency.record(now - failureNanos);
+            logger.info("{}: failover to {} took {} ms", name, serverId, (now - failureNanos) / 1_000_000);
+            failureNanos = 0;
+        }
+        state = to;
+        enteredNanos = now;
+        if (to == State.STOPPED) stopped.complete(this);
+        return this;
+    }
+
+    /**
+     * Stop unless already stopped, e.g. when the set is shut down from outside.
+     */
+    public synchronized void stop (String reason){
+        if (state != State.STOPPED) transition(State.STOPPED, reason);
+    }
+
+    public synchronized State getState (){
+        return state;
+    }
+
+    private static String key (State from, State to){
+        return from + "->" + to;
+    }
+
+    /**
+     * @return the time spent in from before moving to to, null if that transition never happened
+     */
+    public LatencyHistogram getTransitionLatency (State from, State to){
+        return transitionLatency.get(key(from, to));
+    }
+
+    /**
+     * @return time from a primary announcing its shutdown to its successor being active
+     */
+    public LatencyHistogram getFailoverLatency (){
+        return failoverLatency;
+    }
+
+    public CompletableFuture<FailoverStateMachine> getStoppedFuture (){
+        return stopped;
+    }
+}
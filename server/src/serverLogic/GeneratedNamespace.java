@@ -0,0 +1,360 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.sdk.core.AccessLevel;
+import org.eclipse.milo.opcua.sdk.core.Reference;
+import org.eclipse.milo.opcua.sdk.server.OpcUaServer;
+import org.eclipse.milo.opcua.sdk.server.api.DataItem;
+import org.eclipse.milo.opcua.sdk.server.api.ManagedNamespace;
+import org.eclipse.milo.opcua.sdk.server.api.MonitoredItem;
+import org.eclipse.milo.opcua.sdk.server.api.services.AttributeServices.ReadContext;
+import org.eclipse.milo.opcua.sdk.server.api.services.AttributeServices.WriteContext;
+import org.eclipse.milo.opcua.sdk.server.api.services.ViewServices.BrowseContext;
+import org.eclipse.milo.opcua.sdk.server.nodes.UaFolderNode;
+import org.eclipse.milo.opcua.sdk.server.nodes.UaVariableNode;
+import org.eclipse.milo.opcua.sdk.server.util.SubscriptionModel;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.eclipse.milo.opcua.stack.core.types.structured.ViewDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.WriteValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.ubyte;
+
+/**
+ * Namespace of generated Double tags, meant to model plants with hundreds of thousands of tags.
+ * Tags are spread over "Plant/GroupN" folders. In eager mode every tag node is built at startup; in lazy mode only
+ * the folders are, a tag node is built the first time it is browsed, read, written or subscribed, and is evicted
+ * again once it has been idle for a while and nobody monitors it. Values are kept in a TagValueStore, so they
+ * survive the eviction of their node.
+ */
+public class GeneratedNamespace extends ManagedNamespace {
+
+    static final String NAMESPACE_URI = "urn:opcuademo:generated";
+
+    private static final String ROOT = "Plant";
+    private static final String GROUP_PREFIX = ROOT + "/Group";
+    private static final String TAG_PREFIX = ROOT + "/Tag";
+
+    public static class Config {
+        private int tagCount = 0;
+        private int tagsPerFolder = 1000;
+        private boolean lazy = true;
+        private long idleMillis = TimeUnit.MINUTES.toMillis(1);
+
+        /**
+         * Read the configuration from the "generated.tags", "generated.tagsPerFolder", "generated.lazy" and
+         * "generated.idleMillis" system properties.
+         */
+        public static Config fromSystemProperties (){
+            return new Config()
+                    .setTagCount(Integer.getInteger("generated.tags", 0))
+                    .setTagsPerFolder(Integer.getInteger("generated.tagsPerFolder", 1000))
+                    .setLazy(Boolean.parseBoolean(System.getProperty("generated.lazy", "true")))
+                    .setIdleMillis(Long.getLong("generated.idleMillis", TimeUnit.MINUTES.toMillis(1)));
+        }
+
+        public Config setTagCount (int tagCount){
+            if (tagCount < 0) throw new IllegalArgumentException("tag count must not be negative: " + tagCount);
+            this.tagCount = tagCount;
+            return this;
+        }
+
+        public Config setTagsPerFolder (int tagsPerFolder){
+            if (tagsPerFolder <= 0) {
+                throw new IllegalArgumentException("tags per folder must be positive: " + tagsPerFolder);
+            }
+            this.tagsPerFolder = tagsPerFolder;
+            return this;
+        }
+
+        public Config setLazy (boolean lazy){
+            this.lazy = lazy;
+            return this;
+        }
+
+        public Config setIdleMillis (long idleMillis){
+            this.idleMillis = idleMillis;
+            return this;
+        }
+
+        public int getTagCount (){
+            return tagCount;
+        }
+
+        public int getTagsPerFolder (){
+            return tagsPerFolder;
+        }
+
+        public boolean isLazy (){
+            return lazy;
+        }
+
+        public long getIdleMillis (){
+            return idleMillis;
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Config config;
+    private final int groupCount;
+    private final SubscriptionModel subscriptionModel;
+    private final PushSubscriptionModel pushModel;
+    // Tag values outlive their nodes: the tag number is the store index
+    private final TagValueStore store = new TagValueStore();
+
+    private final Map<Integer, UaFolderNode> groups = new ConcurrentHashMap<>();
+    private final Set<Integer> materialized = ConcurrentHashMap.newKeySet();
+    // Per tag bookkeeping, indexed by tag number
+    private final AtomicLongArray lastAccess;
+    private final AtomicIntegerArray monitoredItems;
+    private ScheduledFuture<?> evictionFuture;
+
+    GeneratedNamespace (OpcUaServer server, Config config) {
+        super(server, NAMESPACE_URI);
+        this.config = config;
+        groupCount = (config.getTagCount() + config.getTagsPerFolder() - 1) / config.getTagsPerFolder();
+        subscriptionModel = new SubscriptionModel(server, this);
+        pushModel = new PushSubscriptionModel(server);
+        lastAccess = new AtomicLongArray(config.getTagCount());
+        monitoredItems = new AtomicIntegerArray(config.getTagCount());
+        store.addTags(TagValueStore.ValueType.DOUBLE, config.getTagCount());
+        long now = DateTime.now().getUtcTime();
+        for (int tag = 0; tag < config.getTagCount(); tag++) {
+            store.writeDouble(tag, 0.0, StatusCode.GOOD.getValue(), now, now);
+        }
+    }
+
+    @Override
+    protected void onStartup() {
+        super.onStartup();
+        long start = System.nanoTime();
+
+        UaFolderNode rootNode = new UaFolderNode(
+            getNodeContext(),
+            newNodeId(ROOT),
+            newQualifiedName(ROOT),
+            LocalizedText.english(ROOT)
+        );
+        getNodeManager().addNode(rootNode);
+        rootNode.addReference(new Reference(
+            rootNode.getNodeId(),
+            Identifiers.Organizes,
+            Identifiers.ObjectsFolder.expanded(),
+            false
+        ));
+
+        for (int group = 0; group < groupCount; group++) {
+            String name = "Group" + group;
+            UaFolderNode groupNode = new UaFolderNode(
+                getNodeContext(),
+                newNodeId(GROUP_PREFIX + group),
+                newQualifiedName(name),
+                LocalizedText.english(name)
+            );
+            getNodeManager().addNode(groupNode);
+            rootNode.addOrganizes(groupNode);
+            groups.put(group, groupNode);
+
+            if (!config.isLazy()) materializeGroup(group);
+        }
+
+        if (config.isLazy()) {
+            long period = Math.max(1000, config.getIdleMillis() / 2);
+            evictionFuture = getServer().getScheduledExecutorService()
+                    .scheduleWithFixedDelay(this::evictIdleTags, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        logger.info("Generated namespace with {} tags started in {} ms ({} mode, {} tag nodes built)",
+                    config.getTagCount(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                    config.isLazy() ? "lazy" : "eager",
+                    materialized.size());
+    }
+
+    @Override
+    protected void onShutdown() {
+        if (evictionFuture != null) evictionFuture.cancel(false);
+        super.onShutdown();
+    }
+
+    public int getMaterializedCount (){
+        return materialized.size();
+    }
+
+    /**
+     * @return the tag number of nodeId, or -1 if it isn't a generated tag
+     */
+    private int tagNumber (NodeId nodeId){
+        return parseIndex(nodeId, TAG_PREFIX, config.getTagCount());
+    }
+
+    private int groupNumber (NodeId nodeId){
+        return parseIndex(nodeId, GROUP_PREFIX, groupCount);
+    }
+
+    private int parseIndex (NodeId nodeId, String prefix, int bound){
+        if (nodeId.getNamespaceIndex().intValue() != getNamespaceIndex().intValue()) return -1;
+        Object identifier = nodeId.getIdentifier();
+        if (!(identifier instanceof String) || !((String) identifier).startsWith(prefix)) return -1;
+        try {
+            int index = Integer.parseInt(((String) identifier).substring(prefix.length()));
+            return (index >= 0 && index < bound) ? index : -1;
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Make sure the node(s) behind nodeId exist before serving a request on it.
+     */
+    private void materialize (NodeId nodeId){
+        if (!config.isLazy()) return;
+        int tag = tagNumber(nodeId);
+        if (tag >= 0) {
+            materializeTag(tag);
+            return;
+        }
+        int group = groupNumber(nodeId);
+        if (group >= 0) materializeGroup(group);
+    }
+
+    private void materializeGroup (int group){
+        int first = group * config.getTagsPerFolder();
+        int last = Math.min(first + config.getTagsPerFolder(), config.getTagCount());
+        for (int tag = first; tag < last; tag++) materializeTag(tag);
+    }
+
+    private void materializeTag (int tag){
+        lastAccess.set(tag, System.currentTimeMillis());
+        if (materialized.contains(tag)) return;
+        synchronized (this) {
+            if (materialized.contains(tag)) return;
+            String name = "Tag" + tag;
+            UaVariableNode node = new UaVariableNode.UaVariableNodeBuilder(getNodeContext())
+                .setNodeId(newNodeId(TAG_PREFIX + tag))
+                .setAccessLevel(ubyte(AccessLevel.getMask(AccessLevel.READ_WRITE)))
+                .setUserAccessLevel(ubyte(AccessLevel.getMask(AccessLevel.READ_WRITE)))
+                .setBrowseName(newQualifiedName(name))
+                .setDisplayName(LocalizedText.english(name))
+                .setDataType(Identifiers.Double)
+                .setTypeDefinition(Identifiers.BaseDataVariableType)
+                .build();
+            node.setAttributeDelegate(new StoreValueDelegate(store, tag, pushModel));
+
+            getNodeManager().addNode(node);
+            pushModel.register(node, () -> StoreValueDelegate.toDataValue(store, tag));
+            groups.get(tag / config.getTagsPerFolder()).addOrganizes(node);
+            materialized.add(tag);
+        }
+    }
+
+    private boolean isIdle (int tag, long threshold){
+        return monitoredItems.get(tag) == 0 && lastAccess.get(tag) <= threshold;
+    }
+
+    private void evictIdleTags (){
+        long threshold = System.currentTimeMillis() - config.getIdleMillis();
+        int evicted = 0;
+        for (Integer tag : materialized) {
+            if (!isIdle(tag, threshold)) continue;
+            synchronized (this) {
+                // Unlisted before checking again: a user taking the materializeTag fast path touched the tag before
+                // looking it up, so either it's seen here or it finds the tag missing and waits for this lock
+                if (!materialized.remove(tag)) continue;
+                if (!isIdle(tag, threshold)) {
+                    materialized.add(tag);
+                    continue;
+                }
+                NodeId nodeId = newNodeId(TAG_PREFIX + tag);
+                UaFolderNode group = groups.get(tag / config.getTagsPerFolder());
+                group.removeReference(new Reference(group.getNodeId(), Identifiers.Organizes, nodeId.expanded(), true));
+                getNodeManager().removeNode(nodeId).ifPresent(node -> pushModel.unregister((UaVariableNode) node));
+            }
+            evicted++;
+        }
+        if (evicted > 0) logger.debug("Evicted {} idle tag nodes, {} left", evicted, materialized.size());
+    }
+
+    @Override
+    public void browse(BrowseContext context, ViewDescription view, NodeId nodeId) {
+        materialize(nodeId);
+        super.browse(context, view, nodeId);
+    }
+
+    @Override
+    public void getReferences(BrowseContext context, ViewDescription view, NodeId nodeId) {
+        materialize(nodeId);
+        super.getReferences(context, view, nodeId);
+    }
+
+    @Override
+    public void read(ReadContext context, Double maxAge, TimestampsToReturn timestamps, List<ReadValueId> readValueIds) {
+        readValueIds.forEach(readValueId -> materialize(readValueId.getNodeId()));
+        super.read(context, maxAge, timestamps, readValueIds);
+    }
+
+    @Override
+    public void write(WriteContext context, List<WriteValue> writeValues) {
+        writeValues.forEach(writeValue -> materialize(writeValue.getNodeId()));
+        super.write(context, writeValues);
+    }
+
+    @Override
+    public void onDataItemsCreated(List<DataItem> dataItems) {
+        dataItems.forEach(item -> {
+            NodeId nodeId = item.getReadValueId().getNodeId();
+            // Counted before materializing, so that the eviction can't take the node in between
+            int tag = tagNumber(nodeId);
+            if (tag >= 0) monitoredItems.incrementAndGet(tag);
+            materialize(nodeId);
+        });
+        Map<Boolean, List<DataItem>> items = dataItems.stream().collect(Collectors.partitioningBy(pushModel::accepts));
+        pushModel.onDataItemsCreated(items.get(true));
+        subscriptionModel.onDataItemsCreated(items.get(false));
+    }
+
+    @Override
+    public void onDataItemsModified(List<DataItem> dataItems) {
+        Map<Boolean, List<DataItem>> items = dataItems.stream().collect(Collectors.partitioningBy(pushModel::accepts));
+        pushModel.onDataItemsModified(items.get(true));
+        subscriptionModel.onDataItemsModified(items.get(false));
+    }
+
+    @Override
+    public void onDataItemsDeleted(List<DataItem> dataItems) {
+        Map<Boolean, List<DataItem>> items = dataItems.stream().collect(Collectors.partitioningBy(pushModel::accepts));
+        pushModel.onDataItemsDeleted(items.get(true));
+        subscriptionModel.onDataItemsDeleted(items.get(false));
+        dataItems.forEach(item -> {
+            int tag = tagNumber(item.getReadValueId().getNodeId());
+            if (tag >= 0) {
+                monitoredItems.decrementAndGet(tag);
+                lastAccess.set(tag, System.currentTimeMillis());
+            }
+        });
+    }
+
+    @Override
+    public void onMonitoringModeChanged(List<MonitoredItem> monitoredItems) {
+        pushModel.onMonitoringModeChanged(monitoredItems);
+        subscriptionModel.onMonitoringModeChanged(monitoredItems);
+    }
+}
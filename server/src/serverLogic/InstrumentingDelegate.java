@@ -0,0 +1,83 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.sdk.server.api.nodes.VariableNode;
+import org.eclipse.milo.opcua.sdk.server.nodes.AttributeContext;
+import org.eclipse.milo.opcua.sdk.server.nodes.delegates.AttributeDelegate;
+import org.eclipse.milo.opcua.sdk.server.nodes.delegates.DelegatingAttributeDelegate;
+import org.eclipse.milo.opcua.stack.core.UaException;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Records the count and latency of every value read and write of a node into its NodeMetrics.
+ * The delegates of a namespace share a Switch; when it is off the only cost left is a volatile read before
+ * delegating.
+ */
+public class InstrumentingDelegate extends DelegatingAttributeDelegate {
+
+    /**
+     * Turns the instrumentation of the delegates sharing it on and off.
+     */
+    public static final class Switch {
+
+        private volatile boolean enabled;
+
+        public Switch(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * @return a switch set by the "metrics.enabled" system property, on by default
+         */
+        public static Switch fromSystemProperties() {
+            return new Switch(Boolean.parseBoolean(System.getProperty("metrics.enabled", "true")));
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean value) {
+            enabled = value;
+        }
+    }
+
+    private final NodeMetrics metrics;
+    private final Switch enabled;
+
+    public InstrumentingDelegate(NodeMetrics metrics, Switch enabled, @Nullable AttributeDelegate parent) {
+        super(parent);
+        this.metrics = metrics;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public DataValue getValue(AttributeContext context, VariableNode node) throws UaException {
+        if (!enabled.isEnabled()) return super.getValue(context, node);
+
+        long start = System.nanoTime();
+        try {
+            return super.getValue(context, node);
+        }
+        finally {
+            metrics.getReadLatency().record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void setValue(AttributeContext context, VariableNode node, DataValue value) throws UaException {
+        if (!enabled.isEnabled()) {
+            super.setValue(context, node, value);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            super.setValue(context, node, value);
+        }
+        finally {
+            metrics.getWriteLatency().record(System.nanoTime() - start);
+        }
+    }
+
+}
@@ -4,6 +4,7 @@ import com.google.common.collect.Sets;
 import org.eclipse.milo.opcua.sdk.server.util.HostnameUtil;
 import org.eclipse.milo.opcua.stack.core.util.SelfSignedCertificateBuilder;
 import org.eclipse.milo.opcua.stack.core.util.SelfSignedCertificateGenerator;
+import org.eclipse.milo.opcua.stack.core.util.SelfSignedHttpsCertificateBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,8 +13,17 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.nio.file.Path;
 import java.security.*;
+import java.security.cert.CertificateExpiredException;
+import java.security.cert.CertificateNotYetValidException;
+import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
@@ -26,7 +36,15 @@ class KeyStoreLoader {
 
     private static final String SERVER_ALIAS = "server-ai";
     private static final String CLIENT_ALIAS = "client-server-ai";
+    private static final String HTTPS_ALIAS = "https-server-ai";
+
+    // GeneralName type of a dNSName in X509Certificate.getSubjectAlternativeNames()
+    private static final Integer SAN_DNS_NAME = 2;
+
+    // Generated HTTPS material is renewed when it would expire within this margin
+    private static final Duration HTTPS_RENEWAL_MARGIN = Duration.ofDays(1);
     private static final String APPLICATION_URI = "urn:eclipse:milo:redundant-server";
+    static final String SERVER_APPLICATION_URI = "urn:demo:redundant:server";
     private static final String PASSWORD = "password";
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -38,6 +56,9 @@ class KeyStoreLoader {
     private X509Certificate clientCertificate;
     private KeyPair clientKeyPair;
 
+    private X509Certificate httpsCertificate;
+    private KeyPair httpsKeyPair;
+
     private KeyStore loadKeyStore (Path baseDir, Map<String, String> parameters) throws Exception{
         KeyStore keyStore = KeyStore.getInstance(parameters.getOrDefault("instanceType", "PKCS12"));
         File keyStoreFile = baseDir.resolve(parameters.get("pfxName")).toFile();
@@ -70,7 +91,8 @@ class KeyStoreLoader {
                 Map.entry("localityName", "Pisa"),
                 Map.entry("stateName", "Italy"),
                 Map.entry("countryCode", "IT"),
-                Map.entry("applicationUri", "urn:demo:redundant:server2serverClient")
+                Map.entry("applicationUri", "urn:demo:redundant:server2serverClient"),
+                Map.entry("keyStoreAlias", CLIENT_ALIAS)
             );
         KeyStore clientKeyStore = loadKeyStore(baseDir, parameters);
         Key clientPrivateKey = clientKeyStore.getKey(CLIENT_ALIAS, PASSWORD.toCharArray());
@@ -83,6 +105,13 @@ class KeyStoreLoader {
     }
 
     public KeyStoreLoader loadServerKeyStore (Path baseDir, String pfxName) throws Exception{
+        return loadServerKeyStore(baseDir, pfxName, SERVER_APPLICATION_URI);
+    }
+
+    /**
+     * Load the server key pair and certificate from pfxName, generated for applicationUri if the file is missing.
+     */
+    public KeyStoreLoader loadServerKeyStore (Path baseDir, String pfxName, String applicationUri) throws Exception{
         Map<String, String> parameters = Map.ofEntries(
                 Map.entry("instanceType", "PKCS12"),
                 Map.entry("password", PASSWORD),       // Should be mandatory
@@ -93,7 +122,7 @@ class KeyStoreLoader {
                 Map.entry("localityName", "Pisa"),
                 Map.entry("stateName", "Italy"),
                 Map.entry("countryCode", "IT"),
-                Map.entry("applicationUri", "urn:demo:redundant:server"),
+                Map.entry("applicationUri", applicationUri),
                 Map.entry("keyStoreAlias", SERVER_ALIAS)
         );
         KeyStore keyStore = loadKeyStore(baseDir, parameters);
@@ -111,6 +140,75 @@ class KeyStoreLoader {
         return this;
     }
 
+    /**
+     * Load the HTTPS key pair and self-signed certificate from pfxName, generating and storing them when the file
+     * is missing or the certificate is about to expire.
+     */
+    KeyStoreLoader loadHttpsKeyStore (Path baseDir, String pfxName) throws Exception{
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        File keyStoreFile = baseDir.resolve(pfxName).toFile();
+        char[] password = PASSWORD.toCharArray();
+
+        if (keyStoreFile.exists()) {
+            try (FileInputStream in = new FileInputStream(keyStoreFile)) {
+                keyStore.load(in, password);
+            }
+            Key key = keyStore.getKey(HTTPS_ALIAS, password);
+            X509Certificate certificate = (X509Certificate) keyStore.getCertificate(HTTPS_ALIAS);
+            if (key instanceof PrivateKey && certificate != null && isValid(certificate)
+                && coversHostnames(certificate)) {
+                httpsCertificate = certificate;
+                httpsKeyPair = new KeyPair(certificate.getPublicKey(), (PrivateKey) key);
+                logger.info("Reusing HTTPS certificate from {}, valid until {}", keyStoreFile, certificate.getNotAfter());
+                return this;
+            }
+            logger.info("HTTPS certificate in {} is missing, expiring or for other hostnames, generating a new one",
+                        keyStoreFile);
+        }
+
+        httpsKeyPair = SelfSignedCertificateGenerator.generateRsaKeyPair(2048);
+        SelfSignedHttpsCertificateBuilder builder = new SelfSignedHttpsCertificateBuilder(httpsKeyPair);
+        builder.setCommonName(HostnameUtil.getHostname());
+        HostnameUtil.getHostnames("0.0.0.0").forEach(builder::addDnsName);
+        httpsCertificate = builder.build();
+
+        keyStore.load(null, password);
+        keyStore.setKeyEntry(HTTPS_ALIAS, httpsKeyPair.getPrivate(), password, new X509Certificate[]{httpsCertificate});
+        try (FileOutputStream out = new FileOutputStream(keyStoreFile)) {
+            keyStore.store(out, password);
+        }
+        return this;
+    }
+
+    /**
+     * @return true if the DNS names of certificate are the current hostnames, the ones it would be generated with
+     */
+    private static boolean coversHostnames (X509Certificate certificate){
+        Set<String> dnsNames = new HashSet<>();
+        try {
+            Collection<List<?>> names = certificate.getSubjectAlternativeNames();
+            if (names != null) {
+                for (List<?> name : names) {
+                    if (SAN_DNS_NAME.equals(name.get(0))) dnsNames.add((String) name.get(1));
+                }
+            }
+        }
+        catch (CertificateParsingException e) {
+            return false;
+        }
+        return dnsNames.equals(HostnameUtil.getHostnames("0.0.0.0"));
+    }
+
+    private static boolean isValid (X509Certificate certificate){
+        try {
+            certificate.checkValidity(Date.from(Instant.now().plus(HTTPS_RENEWAL_MARGIN)));
+            return true;
+        }
+        catch (CertificateExpiredException | CertificateNotYetValidException e) {
+            return false;
+        }
+    }
+
     X509Certificate buildCertificate (Map<String, String> parameters, KeyPair keyPair) throws Exception {
 
         SelfSignedCertificateBuilder builder = new SelfSignedCertificateBuilder(keyPair)
@@ -154,4 +252,12 @@ class KeyStoreLoader {
     KeyPair getClientKeyPair() {
         return clientKeyPair;
     }
+
+    X509Certificate getHttpsCertificate() {
+        return httpsCertificate;
+    }
+
+    KeyPair getHttpsKeyPair() {
+        return httpsKeyPair;
+    }
 }
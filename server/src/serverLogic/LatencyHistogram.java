@@ -0,0 +1,55 @@
+package serverLogic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power of two buckets: bucket i counts the latencies in [2^(i-1), 2^i) ns.
+ * Percentiles are reported as the upper bound of their bucket, so they are accurate within a factor of two.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 65;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public void record (long nanos){
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+        count.increment();
+        totalNanos.add(value);
+    }
+
+    public long getCount (){
+        return count.sum();
+    }
+
+    public double getMeanNanos (){
+        long samples = count.sum();
+        return (samples > 0) ? (double) totalNanos.sum() / samples : 0.0;
+    }
+
+    /**
+     * @param percentile in ]0, 100]
+     * @return the upper bound, in nanoseconds, of the bucket holding the given percentile, 0 if nothing was recorded
+     */
+    public long getPercentileNanos (double percentile){
+        long[] snapshot = new long[BUCKETS];
+        long samples = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            samples += snapshot[i];
+        }
+        if (samples == 0) return 0;
+
+        long rank = (long) Math.ceil(samples * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return (i == 0) ? 0 : (i >= Long.SIZE - 1) ? Long.MAX_VALUE : 1L << i;
+        }
+        return Long.MAX_VALUE;
+    }
+}
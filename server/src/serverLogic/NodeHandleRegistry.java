@@ -0,0 +1,95 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.sdk.server.OpcUaServer;
+import org.eclipse.milo.opcua.sdk.server.nodes.UaNode;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.UaRuntimeException;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Typed handles to the nodes touched on hot paths.
+ * A handle resolves its node through the address space once and then hands it out directly. When a node is removed
+ * its handle must be invalidated, the next access resolves it again or fails if the node is gone.
+ */
+public class NodeHandleRegistry {
+
+    public static final class Handle<T extends UaNode> {
+        private final NodeHandleRegistry registry;
+        private final NodeId nodeId;
+        private final Class<T> type;
+        private volatile T node;
+
+        private Handle (NodeHandleRegistry registry, NodeId nodeId, Class<T> type){
+            this.registry = registry;
+            this.nodeId = nodeId;
+            this.type = type;
+        }
+
+        public NodeId getNodeId (){
+            return nodeId;
+        }
+
+        public T get (){
+            T current = node;
+            return (current != null) ? current : resolve();
+        }
+
+        private synchronized T resolve (){
+            if (node == null) {
+                node = registry.server.getAddressSpaceManager()
+                        .getManagedNode(nodeId)
+                        .map(type::cast)
+                        .orElseThrow(() -> new UaRuntimeException(StatusCodes.Bad_NodeIdUnknown,
+                                                                  "node not found: " + nodeId));
+            }
+            return node;
+        }
+
+        private void invalidate (){
+            node = null;
+        }
+    }
+
+    private final OpcUaServer server;
+    private final Map<NodeId, Handle<?>> handles = new ConcurrentHashMap<>();
+
+    public NodeHandleRegistry (OpcUaServer server){
+        this.server = server;
+    }
+
+    /**
+     * Get the handle of nodeId, creating it if needed. The node is resolved lazily on first access.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends UaNode> Handle<T> handle (NodeId nodeId, Class<T> type){
+        Handle<?> handle = handles.computeIfAbsent(nodeId, id -> new Handle<>(this, id, type));
+        if (!type.isAssignableFrom(handle.type)) {
+            throw new IllegalArgumentException(nodeId + " is already registered as " + handle.type.getSimpleName());
+        }
+        return (Handle<T>) handle;
+    }
+
+    /**
+     * Get the handle of nodeId and resolve it right away, so that a missing node is reported at startup.
+     */
+    public <T extends UaNode> Handle<T> resolve (NodeId nodeId, Class<T> type){
+        Handle<T> handle = handle(nodeId, type);
+        handle.get();
+        return handle;
+    }
+
+    /**
+     * Must be called whenever nodeId is removed from the address space.
+     */
+    public void invalidate (NodeId nodeId){
+        Handle<?> handle = handles.get(nodeId);
+        if (handle != null) handle.invalidate();
+    }
+
+    public void invalidateAll (){
+        handles.values().forEach(Handle::invalidate);
+    }
+}
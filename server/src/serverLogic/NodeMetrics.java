@@ -0,0 +1,37 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+
+/**
+ * Read and write latencies of a node, recorded by its InstrumentingDelegate.
+ */
+public class NodeMetrics {
+
+    private final NodeId nodeId;
+    private final LatencyHistogram readLatency = new LatencyHistogram();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+
+    public NodeMetrics (NodeId nodeId){
+        this.nodeId = nodeId;
+    }
+
+    public NodeId getNodeId (){
+        return nodeId;
+    }
+
+    public LatencyHistogram getReadLatency (){
+        return readLatency;
+    }
+
+    public LatencyHistogram getWriteLatency (){
+        return writeLatency;
+    }
+
+    public long getReadCount (){
+        return readLatency.getCount();
+    }
+
+    public long getWriteCount (){
+        return writeLatency.getCount();
+    }
+}
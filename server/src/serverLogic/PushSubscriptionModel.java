@@ -0,0 +1,251 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.sdk.server.OpcUaServer;
+import org.eclipse.milo.opcua.sdk.server.api.DataItem;
+import org.eclipse.milo.opcua.sdk.server.api.MonitoredItem;
+import org.eclipse.milo.opcua.sdk.server.items.MonitoredDataItem;
+import org.eclipse.milo.opcua.sdk.server.nodes.AttributeObserver;
+import org.eclipse.milo.opcua.sdk.server.nodes.UaNode;
+import org.eclipse.milo.opcua.sdk.server.nodes.UaVariableNode;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DeadbandType;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.DataChangeFilter;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Event driven counterpart of Milo's SubscriptionModel.
+ * Instead of re-reading every monitored node on a sampling timer, the value of a registered node is handed to its
+ * data items only when the node is written, so idle monitored items cost nothing between changes.
+ * Nodes whose value is computed on read (e.g. the Dynamic ones) must not be registered and are left to the
+ * SubscriptionModel.
+ * A node can have a default deadband, applied to each of its data items for which the client didn't ask a deadband
+ * of its own: every such item gets a DeadbandFilter comparing a change with the last value notified to that item.
+ * Items with an Absolute DataChangeFilter of their own are filtered by Milo only, when their value is set.
+ */
+public class PushSubscriptionModel {
+
+    private static final Field FILTER_FIELD = filterField();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final OpcUaServer server;
+
+    // Data items attached to each registered node, the list is empty when the node is not monitored
+    private final Map<NodeId, List<DataItem>> itemsByNode = new ConcurrentHashMap<>();
+
+    // Current value of the nodes whose value isn't kept by the node itself
+    private final Map<NodeId, Supplier<DataValue>> valueSources = new ConcurrentHashMap<>();
+
+    // Default deadband of a node, and the filter of each data item it applies to
+    private final Map<NodeId, Double> defaultDeadbands = new ConcurrentHashMap<>();
+    private final Map<DataItem, DeadbandFilter> itemDeadbands = new ConcurrentHashMap<>();
+
+    private final AttributeObserver valueObserver = this::onAttributeChanged;
+
+    public PushSubscriptionModel (OpcUaServer server){
+        this.server = server;
+    }
+
+    /**
+     * Make the value changes of node delivered by this model.
+     */
+    public void register (UaVariableNode node){
+        itemsByNode.putIfAbsent(node.getNodeId(), new CopyOnWriteArrayList<>());
+        node.addAttributeObserver(valueObserver);
+    }
+
+    /**
+     * Register a node whose value is kept elsewhere, e.g. in a TagValueStore: its writer has to call push() and
+     * currentValue gives the value sent to new data items.
+     */
+    public void register (UaVariableNode node, Supplier<DataValue> currentValue){
+        valueSources.put(node.getNodeId(), currentValue);
+        register(node);
+    }
+
+    public void unregister (UaVariableNode node){
+        node.removeAttributeObserver(valueObserver);
+        List<DataItem> items = itemsByNode.remove(node.getNodeId());
+        if (items != null) items.forEach(itemDeadbands::remove);
+        valueSources.remove(node.getNodeId());
+        defaultDeadbands.remove(node.getNodeId());
+    }
+
+    /**
+     * Filter the numeric value changes of a registered node through deadband, for the data items created from now
+     * on without a deadband of their own; null to notify every change.
+     */
+    public void setDefaultDeadband (NodeId nodeId, DeadbandFilter deadband){
+        if (deadband == null) defaultDeadbands.remove(nodeId);
+        else defaultDeadbands.put(nodeId, deadband.getDeadband());
+    }
+
+    /**
+     * @return the default deadband of nodeId, NaN if it has none
+     */
+    public double getDefaultDeadband (NodeId nodeId){
+        return defaultDeadbands.getOrDefault(nodeId, Double.NaN);
+    }
+
+    /**
+     * @return true if item monitors the whole value of a node registered in this model. Items with an IndexRange or
+     * a DataEncoding need the value built by the AttributeReader and are left to the SubscriptionModel.
+     */
+    public boolean accepts (DataItem item){
+        ReadValueId readValueId = item.getReadValueId();
+        return AttributeId.Value.isEqual(readValueId.getAttributeId())
+               && (readValueId.getIndexRange() == null || readValueId.getIndexRange().isEmpty())
+               && (readValueId.getDataEncoding() == null || readValueId.getDataEncoding().isNull())
+               && itemsByNode.containsKey(readValueId.getNodeId());
+    }
+
+    public boolean isMonitored (NodeId nodeId){
+        List<DataItem> items = itemsByNode.get(nodeId);
+        return items != null && !items.isEmpty();
+    }
+
+    /**
+     * Deliver value to the data items of nodeId. Used by writers that don't go through UaVariableNode.setValue.
+     */
+    public void push (NodeId nodeId, DataValue value){
+        List<DataItem> items = itemsByNode.get(nodeId);
+        if (items != null) deliver(items, value);
+    }
+
+    public void onDataItemsCreated (List<DataItem> dataItems){
+        for (DataItem item : dataItems) {
+            List<DataItem> items = itemsByNode.get(item.getReadValueId().getNodeId());
+            if (items == null) {
+                logger.warn("Data item {} doesn't monitor a push node", item.getId());
+                continue;
+            }
+            installDeadband(item);
+            items.add(item);
+            // The first notification of a monitored item has to carry the current value
+            sendCurrentValue(item);
+        }
+    }
+
+    public void onDataItemsModified (List<DataItem> dataItems){
+        // Sampling interval has no meaning for pushed items, nothing to reschedule, but the filter may have changed
+        for (DataItem item : dataItems) {
+            if (itemsByNode.containsKey(item.getReadValueId().getNodeId())) installDeadband(item);
+        }
+    }
+
+    public void onDataItemsDeleted (List<DataItem> dataItems){
+        for (DataItem item : dataItems) {
+            List<DataItem> items = itemsByNode.get(item.getReadValueId().getNodeId());
+            if (items != null) items.remove(item);
+            itemDeadbands.remove(item);
+        }
+    }
+
+    /**
+     * Give item the default deadband of its node, unless the client asked for a deadband of its own.
+     */
+    private void installDeadband (DataItem item){
+        Double deadband = defaultDeadbands.get(item.getReadValueId().getNodeId());
+        if (deadband == null || hasOwnDeadband(item)) itemDeadbands.remove(item);
+        else itemDeadbands.put(item, new DeadbandFilter(deadband));
+    }
+
+    /**
+     * @return true if item has a DataChangeFilter with a deadband, which Milo applies itself when the value is set.
+     * Milo 0.3 keeps the filter of a MonitoredDataItem private, it is read once per item creation or modification.
+     */
+    private boolean hasOwnDeadband (DataItem item){
+        if (FILTER_FIELD == null || !(item instanceof MonitoredDataItem)) return false;
+        try {
+            Object filter = FILTER_FIELD.get(item);
+            return filter instanceof DataChangeFilter
+                   && ((DataChangeFilter) filter).getDeadbandType().intValue() != DeadbandType.None.getValue();
+        }
+        catch (IllegalAccessException e) {
+            logger.warn("Can't read the filter of data item {}: {}", item.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    private static Field filterField (){
+        try {
+            Field field = MonitoredDataItem.class.getDeclaredField("filter");
+            field.setAccessible(true);
+            return field;
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            LoggerFactory.getLogger(PushSubscriptionModel.class)
+                         .warn("Client deadbands unknown, default deadbands apply to every item: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public void onMonitoringModeChanged (List<MonitoredItem> monitoredItems){
+        for (MonitoredItem item : monitoredItems) {
+            List<DataItem> items = itemsByNode.get(item.getReadValueId().getNodeId());
+            if (items != null && items.contains(item)) sendCurrentValue((DataItem) item);
+        }
+    }
+
+    private void sendCurrentValue (DataItem item){
+        if (!item.isSamplingEnabled()) return;
+        Supplier<DataValue> source = valueSources.get(item.getReadValueId().getNodeId());
+        if (source != null) {
+            sendInitialValue(item, source.get());
+            return;
+        }
+        server.getAddressSpaceManager()
+              .getManagedNode(item.getReadValueId().getNodeId())
+              .filter(UaVariableNode.class::isInstance)
+              .ifPresent(node -> sendInitialValue(item, ((UaVariableNode) node).getValue()));
+    }
+
+    private void sendInitialValue (DataItem item, DataValue value){
+        // Always notified, and the reference of the deadband of item from now on
+        passesDeadband(item, value);
+        item.setValue(forItem(item, value));
+    }
+
+    private void onAttributeChanged (UaNode node, AttributeId attributeId, Object value){
+        if (attributeId != AttributeId.Value) return;
+        List<DataItem> items = itemsByNode.get(node.getNodeId());
+        if (items != null) deliver(items, (DataValue) value);
+    }
+
+    private void deliver (List<DataItem> items, DataValue value){
+        for (DataItem item : items) {
+            if (item.isSamplingEnabled() && passesDeadband(item, value)) item.setValue(forItem(item, value));
+        }
+    }
+
+    private boolean passesDeadband (DataItem item, DataValue value){
+        if (itemDeadbands.isEmpty()) return true;
+        DeadbandFilter deadband = itemDeadbands.get(item);
+        if (deadband == null) return true;
+        Object number = value.getValue().getValue();
+        if (!(number instanceof Number)) return true;
+        long status = (value.getStatusCode() != null) ? value.getStatusCode().getValue() : 0;
+        return deadband.test(((Number) number).doubleValue(), status);
+    }
+
+    /**
+     * @return value with only the timestamps item asked for, as the AttributeReader would have read it
+     */
+    private static DataValue forItem (DataItem item, DataValue value){
+        TimestampsToReturn timestamps = item.getTimestampsToReturn();
+        return (timestamps == null || timestamps == TimestampsToReturn.Both)
+               ? value : DataValue.derivedValue(value, timestamps);
+    }
+}
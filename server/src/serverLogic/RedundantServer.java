@@ -4,11 +4,15 @@ import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.eclipse.milo.opcua.sdk.core.QualifiedProperty;
 import org.eclipse.milo.opcua.sdk.server.OpcUaServer;
 import org.eclipse.milo.opcua.sdk.server.api.config.OpcUaServerConfig;
+import org.eclipse.milo.opcua.sdk.server.model.nodes.objects.NonTransparentRedundancyNode;
 import org.eclipse.milo.opcua.sdk.server.model.nodes.objects.ServerNode;
 import org.eclipse.milo.opcua.sdk.server.model.nodes.objects.SystemStatusChangeEventNode;
 import org.eclipse.milo.opcua.sdk.server.model.nodes.objects.TransparentRedundancyNode;
 import org.eclipse.milo.opcua.sdk.server.model.nodes.variables.ServerStatusNode;
+import org.eclipse.milo.opcua.sdk.server.nodes.UaNode;
 import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.UaRuntimeException;
 import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
 import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UByte;
 import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
@@ -35,10 +39,23 @@ public class RedundantServer{
     public final UInteger SHUTDOWN_DELAY_SECONDS = UInteger.valueOf(1);
     public final UInteger SHUTDOWN_DELAY_MILLIS = UInteger.valueOf(SHUTDOWN_DELAY_SECONDS.intValue() * 1000);
     private ExampleNamespace namespace;
+    private GeneratedNamespace generatedNamespace;
     private OpcUaServer server;
     private Server2ServerClient client;
     private String serverId;
     private ScheduledFuture<?> sampleFuture;
+    private volatile boolean runningAsServer;
+    private SampleIngestion ingestion;
+
+    // Completed when this server announces its shutdown, when a standby has seen it, and when it is stopped
+    private final CompletableFuture<RedundantServer> shutdownAnnounced = new CompletableFuture<>();
+    private final CompletableFuture<Void> shutdownAcknowledged = new CompletableFuture<>();
+    private final CompletableFuture<RedundantServer> terminated = new CompletableFuture<>();
+
+    private NodeHandleRegistry handles;
+    private NodeHandleRegistry.Handle<ServerStatusNode> serverStatusNode;
+    private NodeHandleRegistry.Handle<ServerNode> serverNode;
+    private NodeHandleRegistry.Handle<UaNode> serverRedundancyNode;
 
     private ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
     private Lock readLock = readWriteLock.readLock();
@@ -48,8 +65,19 @@ public class RedundantServer{
     public RedundantServer (OpcUaServerConfig config, String serverId){
         this.serverId = serverId;
         server = new OpcUaServer(config);
+        handles = new NodeHandleRegistry(server);
+        serverStatusNode = handles.resolve(Identifiers.Server_ServerStatus, ServerStatusNode.class);
+        serverNode = handles.resolve(Identifiers.Server, ServerNode.class);
+        serverRedundancyNode = handles.resolve(Identifiers.Server_ServerRedundancy, UaNode.class);
         namespace = new ExampleNamespace(server);
         namespace.startup();
+        namespace.enableHistory(TimeSeriesStore.baseDirectory().resolve(serverId));
+        ingestion = new SampleIngestion(serverId, namespace);
+        GeneratedNamespace.Config generatedConfig = GeneratedNamespace.Config.fromSystemProperties();
+        if (generatedConfig.getTagCount() > 0) {
+            generatedNamespace = new GeneratedNamespace(server, generatedConfig);
+            generatedNamespace.startup();
+        }
         client = new Server2ServerClient(serverId + "Client");
     }
 
@@ -62,49 +90,63 @@ public class RedundantServer{
         return server.getConfig();
     }
 
-    private <E> RedundantServer setProperty (NodeId nodeId, QualifiedProperty<E> property, E value){
+    private <E> RedundantServer setProperty (NodeHandleRegistry.Handle<?> handle, QualifiedProperty<E> property, E value){
         writeLock.lock();
-        server.getAddressSpaceManager()
-                .getManagedNode(nodeId)
-                .get()
-                .setProperty(property, value);
+        handle.get().setProperty(property, value);
         writeLock.unlock();
         return this;
     }
 
-    public <V> V getProperty (NodeId nodeId, QualifiedProperty<V> property){
+    private <V> V getProperty (NodeHandleRegistry.Handle<?> handle, QualifiedProperty<V> property){
         readLock.lock();
-        V value = (V) server.getAddressSpaceManager()
-                .getManagedNode(nodeId)
-                .get().getPropertyNode(property)
-                .get().getValue().getValue().getValue();
+        V value = property.getJavaType().cast(handle.get().getPropertyNode(property)
+                .get().getValue().getValue().getValue());
         readLock.unlock();
         return value;
     }
 
+    /**
+     * Read a property of any node. Only the fixed hot-path nodes have a handle, other nodes are looked up in the
+     * address space on each call, so that nothing is kept for them.
+     */
+    public <V> V getProperty (NodeId nodeId, QualifiedProperty<V> property){
+        if (nodeId.equals(serverRedundancyNode.getNodeId())) return getProperty(serverRedundancyNode, property);
+        readLock.lock();
+        try {
+            UaNode node = server.getAddressSpaceManager()
+                    .getManagedNode(nodeId)
+                    .orElseThrow(() -> new UaRuntimeException(StatusCodes.Bad_NodeIdUnknown,
+                                                              "node not found: " + nodeId));
+            return property.getJavaType().cast(node.getPropertyNode(property).get().getValue().getValue().getValue());
+        }
+        finally {
+            readLock.unlock();
+        }
+    }
+
     public RedundantServer setRedundantServerArray (RedundantServerDataType[] array){
         logger.info("Adding {} redundant servers to {}", array.length, this.serverId);
-        return setProperty(Identifiers.Server_ServerRedundancy, TransparentRedundancyNode.REDUNDANT_SERVER_ARRAY, array);
+        return setProperty(serverRedundancyNode, TransparentRedundancyNode.REDUNDANT_SERVER_ARRAY, array);
     }
 
     public String getCurrentRedundantServerId (){
         logger.info("Get current redundant server for {}", this.serverId);
-        return getProperty(Identifiers.Server_ServerRedundancy, TransparentRedundancyNode.CURRENT_SERVER_ID);
+        return getProperty(serverRedundancyNode, TransparentRedundancyNode.CURRENT_SERVER_ID);
     }
 
     public RedundantServer setCurrentRedundantServerId (String serverId){
         logger.info("Setting {} as current running server for {}", serverId, this.serverId);
-        return setProperty(Identifiers.Server_ServerRedundancy, TransparentRedundancyNode.CURRENT_SERVER_ID, serverId);
+        return setProperty(serverRedundancyNode, TransparentRedundancyNode.CURRENT_SERVER_ID, serverId);
     }
 
     public RedundantServerDataType[] getRedundantServerArray (){
         logger.info("Getting {}'s redundant server array", serverId);
-        return getProperty(Identifiers.Server_ServerRedundancy, TransparentRedundancyNode.REDUNDANT_SERVER_ARRAY);
+        return getProperty(serverRedundancyNode, TransparentRedundancyNode.REDUNDANT_SERVER_ARRAY);
     }
 
     public RedundantServer setAsCurrentServer (){
         logger.info("Setting {} as Current Redundant Server", this.serverId);
-        return setProperty(Identifiers.Server_ServerRedundancy, TransparentRedundancyNode.CURRENT_SERVER_ID, this.serverId);
+        return setProperty(serverRedundancyNode, TransparentRedundancyNode.CURRENT_SERVER_ID, this.serverId);
     }
 
     public OpcUaServer getServer () {
@@ -112,9 +154,7 @@ public class RedundantServer{
     }
 
     public ServerState getServerState (){
-        return ((ServerStatusNode) server.getAddressSpaceManager()
-                .getManagedNode(Identifiers.Server_ServerStatus)
-                .get()).getState();
+        return serverStatusNode.get().getState();
     }
 
     public RedundantServer setServerState (ServerState newState){
@@ -122,25 +162,18 @@ public class RedundantServer{
     }
 
     public RedundantServer setSecondsUntilShutdown (UInteger seconds){
-        ((ServerStatusNode) server.getAddressSpaceManager()
-                .getManagedNode(Identifiers.Server_ServerStatus)
-                .get()).setSecondsTillShutdown(seconds);
+        serverStatusNode.get().setSecondsTillShutdown(seconds);
         return this;
     }
 
     public RedundantServer setServerState (ServerState newState, UByte newServiceLevel){
         logger.info("setting {} state/level to {}/{}", serverId, newState.toString(), newServiceLevel);
         // Keep synchronized Server State and Service Level also in the redundant array of this server
-        ((ServerStatusNode) server.getAddressSpaceManager()
-                .getManagedNode(Identifiers.Server_ServerStatus)
-                .get()).setState(newState);
+        serverStatusNode.get().setState(newState);
 
-        ((ServerNode) server.getAddressSpaceManager()
-                .getManagedNode(Identifiers.Server)
-                .get()).setServiceLevel(newServiceLevel);
+        serverNode.get().setServiceLevel(newServiceLevel);
 
-        RedundantServerDataType[] serverArray = server.getAddressSpaceManager()
-                .getManagedNode(Identifiers.Server_ServerRedundancy).get()
+        RedundantServerDataType[] serverArray = serverRedundancyNode.get()
                 .getProperty(TransparentRedundancyNode.REDUNDANT_SERVER_ARRAY).get();
 
         // Find the index of this server inside the redundant server array
@@ -157,45 +190,56 @@ public class RedundantServer{
     }
 
     public UInteger getSecondsUntilShutdown (){
-        return ((ServerStatusNode) server.getAddressSpaceManager()
-                .getManagedNode(Identifiers.Server_ServerStatus)
-                .get()).getSecondsTillShutdown();
+        return serverStatusNode.get().getSecondsTillShutdown();
     }
 
     private CompletableFuture<RedundantServer> startServer (){
         logger.info("{} is starting as server", this.serverId);
+        runningAsServer = true;
         return server.startup().thenApply((s) -> {
             setServerState(ServerState.Running);
+            ingestion.start();
             ScheduledExecutorService executor = server.getScheduledExecutorService();
             int randomFailureTime = ThreadLocalRandom.current().nextInt(5, 10);
 
             // Simulate the failover of the server after a random period
             executor.schedule(() -> {
-                try {
-                    logger.error("{} has encountered a fatal error", getServerId());
-                    sampleFuture.cancel(false);
-                    this.shutdown().get();
-                    //this.fail().get(); // Uncomment this to make the redundant server set to stop
-                }
-                catch (InterruptedException | ExecutionException e) {
-                    logger.error("{} can't be shutdown", getServerId());
-                    e.printStackTrace();
-                }
+                logger.error("{} has encountered a fatal error", getServerId());
+                if (sampleFuture != null) sampleFuture.cancel(false);
+                // Not waited for here: the shutdown itself runs on this executor
+                this.shutdown().whenComplete((server, ex) -> {
+                    if (ex != null) logger.error("{} can't be shutdown", getServerId(), ex);
+                });
+                //this.fail(); // Uncomment this to make the redundant server set to stop
             }, randomFailureTime, TimeUnit.SECONDS);
-            sampleFuture = executor.scheduleAtFixedRate(() -> {
-                double nextSampleValue = ThreadLocalRandom.current().nextDouble(0.0, 100.0);
-                namespace.setAnalogValue(nextSampleValue);
-            }, 0, 567, TimeUnit.MILLISECONDS);
+            // Mirrors get their values from the current server
+            if (serverId.equals(getCurrentRedundantServerId())) startSampling();
             return RedundantServer.this;
         });
     }
 
+    /**
+     * Start producing AnalogValue samples, unless already doing so.
+     */
+    public synchronized RedundantServer startSampling (){
+        if (sampleFuture != null) return this;
+        int analogValueTag = namespace.getAnalogValueTag();
+        sampleFuture = server.getScheduledExecutorService().scheduleAtFixedRate(() -> {
+            double nextSampleValue = ThreadLocalRandom.current().nextDouble(0.0, 100.0);
+            if (!ingestion.publish(analogValueTag, nextSampleValue)) {
+                logger.warn("{} dropped a sample, {} dropped so far", serverId, ingestion.getDroppedCount());
+            }
+        }, 0, 567, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
     public CompletableFuture<RedundantServer> startClient (){
         return client.startup().thenApply((client) ->  RedundantServer.this);
     }
 
     public CompletableFuture<RedundantServer> startup () {
-        if (this.serverId.equals(this.getCurrentRedundantServerId())){
+        // Every server of a HotAndMirrored set serves, transparent standbys only watch the current one
+        if (this.serverId.equals(this.getCurrentRedundantServerId()) || isMirrored()){
             // Run as server
             logger.info("{} is starting as server", this.serverId);
             return startServer();
@@ -216,29 +260,65 @@ public class RedundantServer{
     }
 
     public CompletableFuture<RedundantServer> shutdown () {
-        if (this.serverId.equals(this.getCurrentRedundantServerId())){
-            logger.info("{} will be shut down in {} seconds", serverId, SHUTDOWN_DELAY_SECONDS);
+        if (runningAsServer){
+            if (terminated.isDone()) return terminated;
+            logger.info("{} will be shut down within {} seconds", serverId, SHUTDOWN_DELAY_SECONDS);
             setSecondsUntilShutdown(SHUTDOWN_DELAY_SECONDS);
             setServerState(ServerState.Shutdown);
-            try {
-                // Wait for the client to receive the notification so they can start a cleaning disconnection
-                Thread.sleep(SHUTDOWN_DELAY_MILLIS.intValue());
-            }
-            catch (InterruptedException e) {
-                logger.error("{}'s thread can't sleep", this.getServerId());
-                e.printStackTrace();
-            }
-            return server.shutdown().thenApply((s) -> {
-                    logger.info("{} has been shut down", serverId);
-                    sampleFuture.cancel(true);
-                    return RedundantServer.this;
-            });
+            shutdownAnnounced.complete(this);
+
+            // Stop as soon as the standby has seen the notification, the delay only bounds the wait
+            return shutdownAcknowledged
+                    .completeOnTimeout(null, SHUTDOWN_DELAY_MILLIS.longValue(), TimeUnit.MILLISECONDS)
+                    .thenCompose((v) -> server.shutdown())
+                    .thenApply((s) -> {
+                        logger.info("{} has been shut down", serverId);
+                        if (sampleFuture != null) sampleFuture.cancel(true);
+                        ingestion.stop();
+                        namespace.flushHistory();
+                        shutdownNamespaces();
+                        terminated.complete(RedundantServer.this);
+                        return RedundantServer.this;
+                    });
         }
         else {
-            return client.shutdown().thenApply((c) -> RedundantServer.this);
+            return client.shutdown().thenApply((c) -> {
+                namespace.flushHistory();
+                shutdownNamespaces();
+                return RedundantServer.this;
+            });
         }
     }
 
+    /**
+     * Release a server that was never started, e.g. an unused spare: its namespaces and its Milo server.
+     */
+    public CompletableFuture<RedundantServer> discard (){
+        ingestion.stop();
+        shutdownNamespaces();
+        return server.shutdown().thenApply((s) -> RedundantServer.this);
+    }
+
+    private void shutdownNamespaces (){
+        namespace.shutdown();
+        if (generatedNamespace != null) generatedNamespace.shutdown();
+    }
+
+    /**
+     * Tell this server its shutdown notification has been received, so it can stop without waiting any longer.
+     */
+    public void acknowledgeShutdown (){
+        shutdownAcknowledged.complete(null);
+    }
+
+    public CompletableFuture<RedundantServer> getShutdownFuture (){
+        return shutdownAnnounced;
+    }
+
+    public CompletableFuture<RedundantServer> getTerminationFuture (){
+        return terminated;
+    }
+
     public String getServerId (){
         return serverId;
     }
@@ -247,7 +327,38 @@ public class RedundantServer{
         return namespace.getAnalogValue();
     }
 
+    public SampleIngestion getIngestion (){
+        return ingestion;
+    }
+
+    ExampleNamespace getNamespace (){
+        return namespace;
+    }
+
     public RedundantServer setRedundancySupport (RedundancySupport support){
-        return setProperty(Identifiers.Server_ServerRedundancy, TransparentRedundancyNode.REDUNDANCY_SUPPORT, support);
+        return setProperty(serverRedundancyNode, TransparentRedundancyNode.REDUNDANCY_SUPPORT, support);
+    }
+
+    public boolean isMirrored (){
+        return getProperty(serverRedundancyNode, TransparentRedundancyNode.REDUNDANCY_SUPPORT)
+               == RedundancySupport.HotAndMirrored;
+    }
+
+    /**
+     * Advertise the URIs of the servers of a non-transparent set.
+     */
+    public RedundantServer setServerUriArray (String[] uris){
+        return setProperty(serverRedundancyNode, NonTransparentRedundancyNode.SERVER_URI_ARRAY, uris);
+    }
+
+    /**
+     * Publish the state and service level of every server of the set, this server's service level included.
+     * Called periodically, so unlike setRedundantServerArray it doesn't log.
+     */
+    public RedundantServer updateRedundantServerArray (RedundantServerDataType[] array){
+        for (RedundantServerDataType entry : array) {
+            if (entry.getServerId().equals(serverId)) serverNode.get().setServiceLevel(entry.getServiceLevel());
+        }
+        return setProperty(serverRedundancyNode, TransparentRedundancyNode.REDUNDANT_SERVER_ARRAY, array);
     }
 }
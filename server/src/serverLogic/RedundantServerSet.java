@@ -17,14 +17,13 @@ import org.eclipse.milo.opcua.stack.core.security.SecurityPolicy;
 import org.eclipse.milo.opcua.stack.core.transport.TransportProfile;
 import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
 import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UByte;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.MessageSecurityMode;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.RedundancySupport;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.ServerState;
 import org.eclipse.milo.opcua.stack.core.types.structured.BuildInfo;
 import org.eclipse.milo.opcua.stack.core.types.structured.RedundantServerDataType;
 import org.eclipse.milo.opcua.stack.core.util.CertificateUtil;
-import org.eclipse.milo.opcua.stack.core.util.SelfSignedCertificateGenerator;
-import org.eclipse.milo.opcua.stack.core.util.SelfSignedHttpsCertificateBuilder;
 import org.eclipse.milo.opcua.stack.server.EndpointConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,7 +36,14 @@ import java.nio.file.Path;
 import java.security.KeyPair;
 import java.security.cert.X509Certificate;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static org.eclipse.milo.opcua.sdk.server.api.config.OpcUaServerConfig.*;
@@ -45,9 +51,18 @@ import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.
 
 public class RedundantServerSet {
     private List<RedundantServer> serverSet;
-    private X509Certificate certificate;
     private RedundantServerDataType[] redundantServers;
     private Properties properties;
+    private ValueReplicator replicator;
+    private final RedundancySupport redundancySupport;
+    private final Map<String, OpcUaServerConfig> configs = new HashMap<>();
+    private String[] serverUris;
+    private volatile RedundantServer mirrorSource;
+    private ScheduledExecutorService serviceLevelExecutor;
+    private CompletableFuture<Void> released;
+    private StandbyPool standbyPool;
+    private String startupReport;
+    private final FailoverStateMachine failover = new FailoverStateMachine("ServerSet");
     private Logger logger = LoggerFactory.getLogger(RedundantServerSet.class.getName());
     private Path securityTempDir =  FileSystems.getDefault().getPath(System.getProperty("java.io.tmpdir"), "security");
 
@@ -57,37 +72,163 @@ public class RedundantServerSet {
     public static final int HTTPS_REDUNDANCY_PORT = HTTPS_SERVER_PORT + 1;
     public static final String REDUNDANCY_URL = "opc.tcp://localhost:" + TCP_REDUNDANCY_PORT + "/milo";
 
+    // In a HotAndMirrored set server i listens on the ports above plus i * PORT_STRIDE
+    public static final int PORT_STRIDE = 2;
+    // Backlog of replicated changes at which a mirror advertises the lowest service level
+    public static final long MAX_MIRROR_BACKLOG = 10_000;
+
+    // Timed guards of the failover: a primary has to be running, and then stopped once it announced its shutdown
+    public static final long STARTUP_TIMEOUT_MILLIS = 10_000;
+    public static final long STOP_TIMEOUT_MILLIS = 5_000;
+
+    /**
+     * Build a set whose redundancy mode is given by the redundancy.mode system property, Transparent by default.
+     */
     public RedundantServerSet (int nServer) throws Exception{
-        logger.info("Creating Server Set");
-        KeyStoreLoader loader = buildKeyStoreLoader("redundant-server.pfx");
-        certificate = buildCertificate(loader);
+        this(nServer, RedundancySupport.valueOf(System.getProperty("redundancy.mode", "Transparent")));
+    }
+
+    /**
+     * @param redundancySupport Transparent, with only the current server running, or HotAndMirrored, with every
+     *                          server running on its own ports and mirroring the values of the current one
+     */
+    public RedundantServerSet (int nServer, RedundancySupport redundancySupport) throws Exception{
+        if (redundancySupport != RedundancySupport.Transparent && redundancySupport != RedundancySupport.HotAndMirrored) {
+            throw new UaRuntimeException(StatusCodes.Bad_ConfigurationError,
+                                         "unsupported redundancy mode: " + redundancySupport);
+        }
+        this.redundancySupport = redundancySupport;
+        logger.info("Creating {} Server Set", redundancySupport);
+        StartupTimer timer = new StartupTimer("Server Set");
+
+        // Key material is loaded, or generated on a first run, in parallel. Transparent servers appear as a single
+        // one and share an ApplicationUri, mirrored ones each have their own and so their own certificate
+        ExecutorService keyExecutor = Executors.newFixedThreadPool(3);
+        KeyStoreLoader[] loaders = new KeyStoreLoader[isMirrored() ? nServer : 1];
+        KeyStoreLoader httpsLoader;
+        try {
+            List<CompletableFuture<KeyStoreLoader>> serverKeys = new ArrayList<>();
+            for (int i = 0; i < loaders.length; i++) {
+                String serverId = "Server" + i;
+                serverKeys.add(CompletableFuture.supplyAsync(() -> timer.timeAsync(
+                        "server key store " + serverId, () -> isMirrored()
+                                ? buildKeyStoreLoader("redundant-server-" + serverId + ".pfx",
+                                                      KeyStoreLoader.SERVER_APPLICATION_URI + ":" + serverId)
+                                : buildKeyStoreLoader("redundant-server.pfx", KeyStoreLoader.SERVER_APPLICATION_URI)),
+                        keyExecutor));
+            }
+            CompletableFuture<KeyStoreLoader> httpsKeys = CompletableFuture.supplyAsync(() -> timer.timeAsync(
+                    "https key store", () -> buildHttpsKeyStoreLoader("redundant-server-https.pfx")), keyExecutor);
+            if (nServer > 1) {
+                // Only needed by the standby watchers, so nobody waits for it
+                CompletableFuture.runAsync(() -> timer.timeAsync("client key store", () -> {
+                    Server2ServerClient.preloadKeyStore();
+                    return null;
+                }), keyExecutor).exceptionally((ex) -> {
+                    logger.warn("Can't preload the client key store: {}", ex.getMessage());
+                    return null;
+                });
+            }
+            for (int i = 0; i < loaders.length; i++) {
+                loaders[i] = serverKeys.get(i).get();
+            }
+            httpsLoader = httpsKeys.get();
+        }
+        finally {
+            keyExecutor.shutdown();
+        }
+
+        X509Certificate[] certificates = new X509Certificate[loaders.length];
+        for (int i = 0; i < loaders.length; i++) {
+            KeyStoreLoader loader = loaders[i];
+            certificates[i] = timer.time("certificate " + i, () -> buildCertificate(loader));
+        }
         redundantServers = new RedundantServerDataType[nServer];
         for (int i = 0; i < nServer; i++) {
             redundantServers[i] = new RedundantServerDataType("Server" + i, ubyte(1), ServerState.Suspended);
         }
-        serverSet = new LinkedList<>();
-        OpcUaServerConfig config = createDefaultConfigBuilder(loader)
-                                   .setEndpoints(createEndpointConfigurations(certificate))
-                                   .build();
+        serverSet = new CopyOnWriteArrayList<>();
+        serverUris = new String[nServer];
+        OpcUaServerConfig sharedConfig = null;
+        for (int i = 0; i < nServer; i++) {
+            // Transparent servers take turns on the same ports, mirrored ones run side by side
+            int portOffset = isMirrored() ? i * PORT_STRIDE : 0;
+            if (sharedConfig == null || isMirrored()) {
+                int keys = isMirrored() ? i : 0;
+                sharedConfig = timer.time("server config " + i, () -> createDefaultConfigBuilder(
+                                                        loaders[keys], httpsLoader, certificates[keys])
+                                                        .setEndpoints(createEndpointConfigurations(certificates[keys],
+                                                                                                   portOffset))
+                                                        .build());
+            }
+            configs.put("Server" + i, sharedConfig);
+            // The ServerUriArray of a non-transparent set lists the ApplicationUris of the servers
+            serverUris[i] = sharedConfig.getApplicationUri();
+        }
 
         for (int i = 0; i < nServer; i++) {
-            serverSet.add(new RedundantServer(config, "Server" + i)
-                                            .setClientEndpointURL(REDUNDANCY_URL)
-                                            .setRedundantServerArray(redundantServers)
-                                            .setServerState(ServerState.Suspended)
-                                            .setRedundancySupport(RedundancySupport.Transparent)
-            );
+            String serverId = "Server" + i;
+            serverSet.add(timer.time(serverId, () -> newServer(serverId)));
         }
         properties = new Properties();
+        replicator = new ValueReplicator("ServerSet");
+        if (nServer > 1) {
+            standbyPool = StandbyPool.fromSystemProperties(
+                    serverSet.stream().map(RedundantServer::getServerId).collect(Collectors.toList()),
+                    this::newSpare);
+        }
+        startupReport = timer.report();
+        logger.info("{}", startupReport);
+    }
+
+    private boolean isMirrored (){
+        return redundancySupport == RedundancySupport.HotAndMirrored;
+    }
+
+    private RedundantServer newServer (String serverId){
+        return newServer(serverId, redundantServers);
     }
 
-    private KeyStoreLoader buildKeyStoreLoader (String pfxName) throws Exception{
+    /**
+     * Build a spare for the standby pool. It gets a private copy of the redundant server array, so that its state
+     * isn't published in the set, where its id may belong to the running primary, until it is taken.
+     */
+    private RedundantServer newSpare (String serverId){
+        return newServer(serverId, redundantServers.clone());
+    }
+
+    private RedundantServer newServer (String serverId, RedundantServerDataType[] serverArray){
+        RedundantServer server = new RedundantServer(configs.get(serverId), serverId)
+                    .setClientEndpointURL(REDUNDANCY_URL)
+                    .setRedundantServerArray(serverArray)
+                    .setServerState(ServerState.Suspended)
+                    .setRedundancySupport(redundancySupport);
+        return isMirrored() ? server.setServerUriArray(serverUris) : server;
+    }
+
+    /**
+     * @return a spare for serverId joined to the set, or null if the pool has none ready
+     */
+    private RedundantServer takeSpare (String serverId){
+        RedundantServer spare = standbyPool.take(serverId);
+        if (spare == null) return null;
+        // The instance it replaces is stopped, the spare now stands for its id
+        return spare.setRedundantServerArray(redundantServers).setServerState(ServerState.Suspended);
+    }
+
+    private KeyStoreLoader buildKeyStoreLoader (String pfxName, String applicationUri) throws Exception{
         if (Files.notExists(Files.createDirectories(securityTempDir))){
             throw new IOException("unable to create security temp dir: " + securityTempDir);
         }
         logger.info("security temp dir: {}", securityTempDir);
 
-        return new KeyStoreLoader().loadServerKeyStore(securityTempDir, pfxName);
+        return new KeyStoreLoader().loadServerKeyStore(securityTempDir, pfxName, applicationUri);
+    }
+
+    private KeyStoreLoader buildHttpsKeyStoreLoader (String pfxName) throws Exception{
+        // Kept next to the PKI directory and reused while valid
+        Files.createDirectories(securityTempDir);
+        return new KeyStoreLoader().loadHttpsKeyStore(securityTempDir, pfxName);
     }
 
     private X509Certificate buildCertificate (KeyStoreLoader loader){
@@ -106,7 +247,8 @@ public class RedundantServerSet {
 
     public RedundantServer getCurrentClient () { return (serverSet.size() > 1) ? serverSet.get(1) : null;}
 
-    private OpcUaServerConfigBuilder createDefaultConfigBuilder (KeyStoreLoader loader) throws Exception{
+    private OpcUaServerConfigBuilder createDefaultConfigBuilder (KeyStoreLoader loader, KeyStoreLoader httpsLoader,
+                                                                 X509Certificate certificate) throws Exception{
         logger.info("Creating Server Configuration");
         File pkiDir = securityTempDir.resolve("pki").toFile();
         DefaultTrustListManager trustListManager = new DefaultTrustListManager(pkiDir);
@@ -114,12 +256,8 @@ public class RedundantServerSet {
 
         DefaultCertificateValidator certificateValidator = new DefaultCertificateValidator(trustListManager);
 
-        KeyPair httpsKeyPair = SelfSignedCertificateGenerator.generateRsaKeyPair(2048);
-
-        SelfSignedHttpsCertificateBuilder httpsCertificateBuilder = new SelfSignedHttpsCertificateBuilder(httpsKeyPair);
-        httpsCertificateBuilder.setCommonName(HostnameUtil.getHostname());
-        HostnameUtil.getHostnames("0.0.0.0").forEach(httpsCertificateBuilder::addDnsName);
-        X509Certificate httpsCertificate = httpsCertificateBuilder.build();
+        KeyPair httpsKeyPair = httpsLoader.getHttpsKeyPair();
+        X509Certificate httpsCertificate = httpsLoader.getHttpsCertificate();
 
         UsernameIdentityValidator identityValidator = new UsernameIdentityValidator(
                 true,
@@ -163,7 +301,7 @@ public class RedundantServerSet {
                 .setProductUri("urn:eclipse:milo:redundant-server-set");
     }
 
-    private Set<EndpointConfiguration> createEndpointConfigurations(X509Certificate certificate) {
+    private Set<EndpointConfiguration> createEndpointConfigurations(X509Certificate certificate, int portOffset) {
         Set<EndpointConfiguration> endpointConfigurations = new LinkedHashSet<>();
 
         List<String> bindAddresses = newArrayList();
@@ -189,15 +327,15 @@ public class RedundantServerSet {
                         .setSecurityPolicy(SecurityPolicy.None)
                         .setSecurityMode(MessageSecurityMode.None);
 
-                endpointConfigurations.add(buildTcpEndpoint(noSecurityBuilder, TCP_SERVER_PORT));
-                endpointConfigurations.add(buildHttpsEndpoint(noSecurityBuilder, HTTPS_SERVER_PORT));
+                endpointConfigurations.add(buildTcpEndpoint(noSecurityBuilder, TCP_SERVER_PORT + portOffset));
+                endpointConfigurations.add(buildHttpsEndpoint(noSecurityBuilder, HTTPS_SERVER_PORT + portOffset));
 
                 // TCP Basic256Sha256 / SignAndEncrypt
                 endpointConfigurations.add(buildTcpEndpoint(
                         builder.copy()
                                 .setSecurityPolicy(SecurityPolicy.Basic256Sha256)
                                 .setSecurityMode(MessageSecurityMode.SignAndEncrypt),
-                        TCP_SERVER_PORT)
+                        TCP_SERVER_PORT + portOffset)
                 );
 
                 // HTTPS Basic256Sha256 / Sign (SignAndEncrypt not allowed for HTTPS)
@@ -205,7 +343,7 @@ public class RedundantServerSet {
                                 builder.copy()
                                         .setSecurityPolicy(SecurityPolicy.Basic256Sha256)
                                         .setSecurityMode(MessageSecurityMode.Sign),
-                                HTTPS_SERVER_PORT)
+                                HTTPS_SERVER_PORT + portOffset)
                 );
 
                 EndpointConfiguration.Builder discoveryBuilder = builder.copy()
@@ -213,16 +351,16 @@ public class RedundantServerSet {
                         .setSecurityPolicy(SecurityPolicy.None)
                         .setSecurityMode(MessageSecurityMode.None);
 
-                endpointConfigurations.add(buildTcpEndpoint(discoveryBuilder, TCP_SERVER_PORT));
-                endpointConfigurations.add(buildHttpsEndpoint(discoveryBuilder, HTTPS_SERVER_PORT));
+                endpointConfigurations.add(buildTcpEndpoint(discoveryBuilder, TCP_SERVER_PORT + portOffset));
+                endpointConfigurations.add(buildHttpsEndpoint(discoveryBuilder, HTTPS_SERVER_PORT + portOffset));
 
                 EndpointConfiguration.Builder redundantSetBuilder = builder.copy()
                         .setPath("/milo/redundant")
                         .setSecurityPolicy(SecurityPolicy.Basic256Sha256)
                         .setSecurityMode(MessageSecurityMode.Sign);
 
-                endpointConfigurations.add(buildTcpEndpoint(redundantSetBuilder, TCP_REDUNDANCY_PORT));
-                endpointConfigurations.add(buildHttpsEndpoint(redundantSetBuilder, HTTPS_REDUNDANCY_PORT));
+                endpointConfigurations.add(buildTcpEndpoint(redundantSetBuilder, TCP_REDUNDANCY_PORT + portOffset));
+                endpointConfigurations.add(buildHttpsEndpoint(redundantSetBuilder, HTTPS_REDUNDANCY_PORT + portOffset));
             }
         }
         return endpointConfigurations;
@@ -248,67 +386,314 @@ public class RedundantServerSet {
                 .orElse(null);
     }
 
+    /**
+     * @return a new instance of server, taken from the standby pool when one is ready
+     */
     private RedundantServer rebuild (RedundantServer server){
-        return new RedundantServer(server.getServerConfig(), server.getServerId())
-                                .setRedundantServerArray(redundantServers)
-                                .setClientEndpointURL(REDUNDANCY_URL);
+        RedundantServer spare = takeSpare(server.getServerId());
+        return (spare != null) ? spare : newServer(server.getServerId());
     }
 
+    /**
+     * Make primary the source of the replicated values and every other server of the set a standby.
+     */
+    private void replicateFrom (RedundantServer primary){
+        replicator.setSource(primary.getNamespace())
+                  .setReplicas(serverSet.stream().map(RedundantServer::getNamespace).collect(Collectors.toList()));
+    }
+
+    /**
+     * Start the set and wait until it stops. Same as start().join(), for callers owning a thread anyway.
+     */
     public void run () {
-        logger.info("Starting transparent redundant server set");
+        try {
+            start().join();
+        }
+        catch (CompletionException e) {
+            logger.error("Error during execution: {}\n{}", e, e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Start the set without blocking: from here on the failover is driven by the server and client futures.
+     * @return completed once the set is stopped and its resources released
+     */
+    public CompletableFuture<Void> start () {
+        logger.info("Starting {} redundant server set", redundancySupport);
         RedundantServer server = serverSet.get(0).setAsCurrentServer();
+        if (serverSet.size() > 1 && isMirrored()){
+            runMirrored(server);
+        }
+        else if (serverSet.size() > 1){
+            activate(server);
+        }
+        else {
+            server.startup().whenComplete((s, ex) -> {
+                if (ex != null) failover.stop(server.getServerId() + " didn't start");
+            });
+        }
+        return failover.getStoppedFuture().thenCompose((f) -> release()).thenRun(() -> {
+            logger.info("Cleaning OPCUA Stack Shared Resources");
+            Stack.releaseSharedResources();
+            logger.info("Exiting Redundant server set");
+        });
+    }
+
+    /**
+     * Start every server of a HotAndMirrored set, source being the one producing the values the others mirror.
+     */
+    private void runMirrored (RedundantServer source){
+        setMirrorSource(source);
+        serverSet.forEach(this::startMirror);
+        serviceLevelExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "service-level");
+            thread.setDaemon(true);
+            return thread;
+        });
+        serviceLevelExecutor.scheduleWithFixedDelay(this::publishServiceLevels, 0, 1, TimeUnit.SECONDS);
+    }
+
+    private void setMirrorSource (RedundantServer source){
+        logger.info("{} is the source of the mirrored values", source.getServerId());
+        mirrorSource = source;
+        source.setAsCurrentServer();
+        serverSet.forEach(s -> s.setCurrentRedundantServerId(source.getServerId()));
+        replicateFrom(source);
+        // A source not running yet starts sampling once it is
+        if (source.getServerState() == ServerState.Running) source.startSampling();
+    }
+
+    private void startMirror (RedundantServer server){
+        server.startup().whenComplete((s, ex) -> {
+            if (ex != null) logger.error("{} didn't start: {}", server.getServerId(), ex.getMessage(), ex);
+        });
+        // Nobody watches a mirror, clients get the whole shutdown delay to move to another server
+        server.getTerminationFuture().thenRunAsync(() -> replaceMirror(server));
+    }
+
+    /**
+     * Replace a stopped mirror by a new instance on the same ports, moving the source elsewhere if it was the source.
+     */
+    private void replaceMirror (RedundantServer failed){
+        if (failover.getState() == FailoverStateMachine.State.STOPPED) return;
+        int index = serverSet.indexOf(failed);
+        if (index < 0) {
+            logger.warn("{} isn't in the set anymore, not replacing it", failed.getServerId());
+            return;
+        }
+        RedundantServer replacement = rebuild(failed);
+        ValueReplicator.copy(failed.getNamespace(), replacement.getNamespace());
+        serverSet.set(index, replacement);
+        if (failed == mirrorSource) {
+            setMirrorSource(serverSet.stream()
+                                     .filter(s -> s.getServerState() == ServerState.Running)
+                                     .findFirst()
+                                     .orElse(replacement));
+        }
+        else {
+            replacement.setCurrentRedundantServerId(mirrorSource.getServerId());
+            replicateFrom(mirrorSource);
+        }
+        startMirror(replacement);
+    }
+
+    /**
+     * Advertise the state and service level of every server on every running one, so clients can pick the best.
+     */
+    private void publishServiceLevels (){
         try {
-            if (serverSet.size() > 1){
-                RedundantServer client = serverSet.get(1).setCurrentRedundantServerId(server.getServerId());
-                while (true){
-                    try {
-                        server.startup().get();
+            RedundantServerDataType[] array = serverSet.stream()
+                    .map(s -> new RedundantServerDataType(s.getServerId(), serviceLevelOf(s), s.getServerState()))
+                    .toArray(RedundantServerDataType[]::new);
+            serverSet.stream()
+                     .filter(s -> s.getServerState() == ServerState.Running)
+                     .forEach(s -> s.updateRedundantServerArray(array));
+        }
+        catch (RuntimeException e) {
+            logger.error("Can't publish the service levels: {}", e.getMessage(), e);
+        }
+    }
+
+    private UByte serviceLevelOf (RedundantServer server){
+        if (server.getServerState() != ServerState.Running) return ubyte(0);
+        if (server == mirrorSource) return ubyte(255);
+        // A mirror in sync advertises 200, down to 1 when it lags MAX_MIRROR_BACKLOG changes behind
+        long backlog = Math.min(Math.max(replicator.getBacklog(server.getNamespace()), 0), MAX_MIRROR_BACKLOG);
+        return ubyte(1 + (int) (199 * (MAX_MIRROR_BACKLOG - backlog) / MAX_MIRROR_BACKLOG));
+    }
+
+    /**
+     * Start server as primary, with the next server of the set watching it as standby.
+     */
+    private void activate (RedundantServer server){
+        failover.transition(FailoverStateMachine.State.STARTING, server.getServerId());
+        CompletableFuture<RedundantServer> starting = startAsPrimary(server);
+        starting.copy()
+                .orTimeout(STARTUP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .whenComplete((primary, ex) -> {
+                    if (failover.getState() == FailoverStateMachine.State.STOPPED) return;
+                    if (ex != null) {
+                        logger.error("{} didn't start as primary: {}", server.getServerId(), ex.getMessage(), ex);
+                        RedundantServer failed = getCurrentServer().setServerState(ServerState.Failed, ubyte(0));
+                        stopFailedStartup(failed, starting).whenComplete((v, stopEx) -> {
+                            if (failover.getState() == FailoverStateMachine.State.STOPPED) return;
+                            failover.transition(FailoverStateMachine.State.PROMOTING, failed.getServerId());
+                            promote(failed);
+                        });
                     }
-                    catch (IllegalStateException e){
-                        // Milo doesn't allow a stopped server to become running again apparently
-                        serverSet.remove(server);
-                        server = rebuild(server).setAsCurrentServer().startup().get();
-                        serverSet.add(0, server);
+                    else {
+                        failover.transition(FailoverStateMachine.State.ACTIVE, primary.getServerId());
+                        watch(primary, serverSet.get(1));
                     }
-                    // Client startup is blocking while client is running
-                    client.startup().get();
-
-                    // Wait the server to actually shutdown
-                    Thread.sleep(server.getSecondsUntilShutdown().intValue() * 1000);
-
-                    // At this point another server has to be started since the latter one has failed
-                    logger.info("Put {} to the tail of the set", server.getServerId());
-                    serverSet.remove(server);
-                    serverSet.add(server);
-                    server = getNextAvailableServer();
-                    if (server == null) break;
-                    server.setAsCurrentServer();
-                    client = serverSet.get(1).setCurrentRedundantServerId(server.getServerId());
-                }
-            }
-            else server.startup().get();
+                });
+    }
+
+    /**
+     * Shut down a server whose startup failed or timed out, so that a late startup doesn't leave it running next to
+     * its successor. Completes once it is stopped, or gave up on it after STOP_TIMEOUT_MILLIS for each step.
+     */
+    private CompletableFuture<Void> stopFailedStartup (RedundantServer failed,
+                                                      CompletableFuture<RedundantServer> starting){
+        return starting.handle((s, ex) -> (Void) null)
+                       .completeOnTimeout(null, STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                       .thenCompose((v) -> {
+                           // Nobody watches it, no need to wait for a standby to see the shutdown
+                           failed.acknowledgeShutdown();
+                           return failed.shutdown();
+                       })
+                       .orTimeout(failed.SHUTDOWN_DELAY_MILLIS.longValue() + STOP_TIMEOUT_MILLIS,
+                                  TimeUnit.MILLISECONDS)
+                       .handle((s, ex) -> {
+                           if (ex != null) {
+                               logger.error("{} didn't stop after its failed startup: {}", failed.getServerId(),
+                                            ex.getMessage());
+                           }
+                           return null;
+                       });
+    }
+
+    private CompletableFuture<RedundantServer> startAsPrimary (RedundantServer server){
+        // The primary heads the set and the server after it is the standby
+        serverSet.remove(server);
+        serverSet.add(0, server.setAsCurrentServer());
+        serverSet.get(1).setCurrentRedundantServerId(server.getServerId());
+        replicateFrom(server);
+        try {
+            return server.startup();
         }
-        catch (InterruptedException | ExecutionException e) {
-            logger.error("Error during execution: {}\n{}", e, e.getMessage());
-            e.printStackTrace();
+        catch (IllegalStateException e){
+            // Milo doesn't allow a stopped server to become running again apparently
+            RedundantServer rebuilt = rebuild(server).setAsCurrentServer();
+            // The stopped instance kept receiving the primary values as a standby, carry them over
+            ValueReplicator.copy(server.getNamespace(), rebuilt.getNamespace());
+            serverSet.set(0, rebuilt);
+            replicateFrom(rebuilt);
+            return rebuilt.startup();
         }
-        logger.info("Cleaning OPCUA Stack Shared Resources");
-        Stack.releaseSharedResources();
+    }
 
-        logger.info("Exiting Redundant server set");
-        shutdown();
+    /**
+     * React to the shutdown of primary: the standby seeing it lets primary stop right away, and primary being
+     * stopped promotes its successor.
+     */
+    private void watch (RedundantServer primary, RedundantServer standby){
+        // The standby client completes once it has seen the primary going down
+        standby.startup().whenComplete((s, ex) -> {
+            // A standby that failed hasn't seen anything, primary then waits the whole shutdown delay
+            if (ex != null) logger.warn("{} can't watch {}: {}", standby.getServerId(), primary.getServerId(), ex.getMessage());
+            else primary.acknowledgeShutdown();
+        });
+
+        primary.getShutdownFuture()
+               .thenCompose((p) -> {
+                   failover.transition(FailoverStateMachine.State.DRAINING, p.getServerId());
+                   return p.getTerminationFuture().copy().orTimeout(
+                           primary.SHUTDOWN_DELAY_MILLIS.longValue() + STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+               })
+               .whenComplete((p, ex) -> {
+                   if (ex != null) logger.error("{} didn't stop in time: {}", primary.getServerId(), ex.getMessage());
+                   if (failover.getState() == FailoverStateMachine.State.STOPPED) return;
+                   failover.transition(FailoverStateMachine.State.PROMOTING, primary.getServerId());
+                   promote(primary);
+               });
     }
 
-    public void shutdown (){
-        serverSet.forEach(server -> {
-            try {
-                server.shutdown().get();
+    private void promote (RedundantServer failed){
+        // At this point another server has to be started since the latter one has failed
+        logger.info("Put {} to the tail of the set", failed.getServerId());
+        serverSet.remove(failed);
+        RedundantServer tail = failed;
+        if (failed.getTerminationFuture().isDone()) {
+            // A stopped server can't run again, swap it for a spare while it's off the failover path
+            RedundantServer spare = takeSpare(failed.getServerId());
+            if (spare != null) {
+                logger.info("Replacing the stopped {} with a spare", failed.getServerId());
+                tail = spare;
             }
-            catch (Exception ignored) {}
-        });
+        }
+        serverSet.add(tail);
+        RedundantServer next = getNextAvailableServer();
+        if (next == null) {
+            failover.stop("no server left");
+            return;
+        }
+
+        // Values the new primary missed when the old one stopped, then let the pending ones land
+        logger.info("{} is {} value changes behind the failed server",
+                    next.getServerId(), replicator.getBacklog(next.getNamespace()));
+        replicator.flush().whenCompleteAsync((v, ex) -> activate(next));
+    }
+
+    /**
+     * Stop the set: the future returned by start() completes once every server is shut down.
+     */
+    public CompletableFuture<Void> shutdown (){
+        failover.stop("shutdown");
+        return release();
+    }
+
+    private synchronized CompletableFuture<Void> release (){
+        if (released != null) return released;
+        if (serviceLevelExecutor != null) serviceLevelExecutor.shutdownNow();
+        replicator.shutdown();
+        if (standbyPool != null) standbyPool.shutdown();
+        released = CompletableFuture.allOf(serverSet.stream()
+                                                    .map(server -> server.shutdown().exceptionally((ex) -> null))
+                                                    .toArray(CompletableFuture[]::new));
+        return released;
     }
 
     public Properties getProperties (){
         return properties;
     }
+
+    /**
+     * @return how long each phase of the construction of this set took
+     */
+    public String getStartupReport (){
+        return startupReport;
+    }
+
+    public ValueReplicator getReplicator (){
+        return replicator;
+    }
+
+    /**
+     * @return the spare servers of a set of more than one server, null otherwise
+     */
+    public StandbyPool getStandbyPool (){
+        return standbyPool;
+    }
+
+    public FailoverStateMachine getFailover (){
+        return failover;
+    }
+
+    /**
+     * @return time from a primary announcing its shutdown to its successor running
+     */
+    public LatencyHistogram getFailoverLatency (){
+        return failover.getFailoverLatency();
+    }
 }
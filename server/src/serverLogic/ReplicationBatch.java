@@ -0,0 +1,136 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A run of consecutive value changes of a namespace, numbered from getFirstSequence() to getLastSequence().
+ * Store tag updates are kept in primitive columns, the values that live in the nodes as (NodeId, DataValue) pairs.
+ * A snapshot batch carries the whole state of the namespace as of getLastSequence().
+ */
+public class ReplicationBatch {
+
+    private final boolean snapshot;
+    private final long createdNanos = System.nanoTime();
+    private long firstSequence;
+    private long lastSequence;
+
+    private int tagCount;
+    private int[] tags;
+    private long[] bits;
+    private long[] statuses;
+    private long[] sourceTimes;
+    private long[] serverTimes;
+
+    private final List<NodeId> nodeIds = new ArrayList<>();
+    private final List<DataValue> nodeValues = new ArrayList<>();
+
+    public ReplicationBatch (long firstSequence, boolean snapshot, int initialCapacity){
+        this.firstSequence = firstSequence;
+        this.lastSequence = firstSequence - 1;
+        this.snapshot = snapshot;
+        tags = new int[initialCapacity];
+        bits = new long[initialCapacity];
+        statuses = new long[initialCapacity];
+        sourceTimes = new long[initialCapacity];
+        serverTimes = new long[initialCapacity];
+    }
+
+    /**
+     * @return the sequence number given to this update
+     */
+    public long addTag (int tag, long bits, long status, long sourceTime, long serverTime){
+        if (tagCount == tags.length) {
+            int capacity = Math.max(16, tagCount * 2);
+            tags = Arrays.copyOf(tags, capacity);
+            this.bits = Arrays.copyOf(this.bits, capacity);
+            statuses = Arrays.copyOf(statuses, capacity);
+            sourceTimes = Arrays.copyOf(sourceTimes, capacity);
+            serverTimes = Arrays.copyOf(serverTimes, capacity);
+        }
+        tags[tagCount] = tag;
+        this.bits[tagCount] = bits;
+        statuses[tagCount] = status;
+        sourceTimes[tagCount] = sourceTime;
+        serverTimes[tagCount] = serverTime;
+        tagCount++;
+        return ++lastSequence;
+    }
+
+    /**
+     * @return the sequence number given to this update
+     */
+    public long addNode (NodeId nodeId, DataValue value){
+        nodeIds.add(nodeId);
+        nodeValues.add(value);
+        return ++lastSequence;
+    }
+
+    /**
+     * Stamp a snapshot with the sequence number of the last change it includes.
+     */
+    void setSnapshotSequence (long sequence){
+        firstSequence = sequence;
+        lastSequence = sequence;
+    }
+
+    public boolean isSnapshot (){
+        return snapshot;
+    }
+
+    public boolean isEmpty (){
+        return tagCount == 0 && nodeIds.isEmpty();
+    }
+
+    public int size (){
+        return tagCount + nodeIds.size();
+    }
+
+    public long getFirstSequence (){
+        return firstSequence;
+    }
+
+    public long getLastSequence (){
+        return lastSequence;
+    }
+
+    public long getCreatedNanos (){
+        return createdNanos;
+    }
+
+    public int getTagCount (){
+        return tagCount;
+    }
+
+    public int getTag (int i){
+        return tags[i];
+    }
+
+    public long getBits (int i){
+        return bits[i];
+    }
+
+    public long getStatus (int i){
+        return statuses[i];
+    }
+
+    public long getSourceTime (int i){
+        return sourceTimes[i];
+    }
+
+    public long getServerTime (int i){
+        return serverTimes[i];
+    }
+
+    public List<NodeId> getNodeIds (){
+        return nodeIds;
+    }
+
+    public List<DataValue> getNodeValues (){
+        return nodeValues;
+    }
+}
@@ -0,0 +1,144 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free ring buffer of the value changes handed to a ValueReplicator, many producers and a single
+ * consumer at a time. Built like SampleRingBuffer: store tag updates are kept in primitive columns, node values as
+ * references, and each slot carries a sequence number telling whether it is free for the producer owning position p
+ * (sequence == p) or readable by the consumer (sequence == p + 1).
+ * The position of a change in the buffer, plus one, is its replication sequence number.
+ */
+public class ReplicationRingBuffer {
+
+    private static final int NODE = -1;
+
+    private final int mask;
+    private final int[] tags;
+    private final long[] bits;
+    private final long[] statuses;
+    private final long[] sourceTimes;
+    private final long[] serverTimes;
+    private final NodeId[] nodeIds;
+    private final DataValue[] nodeValues;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong();
+    // Only touched by the consumer, callers of drain() hand it over with a lock
+    private long head = 0;
+    private volatile long consumed = 0;
+
+    /**
+     * @param capacity rounded up to the next power of two
+     */
+    public ReplicationRingBuffer (int capacity){
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        mask = size - 1;
+        tags = new int[size];
+        bits = new long[size];
+        statuses = new long[size];
+        sourceTimes = new long[size];
+        serverTimes = new long[size];
+        nodeIds = new NodeId[size];
+        nodeValues = new DataValue[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+    }
+
+    /**
+     * Add a store tag update, never blocks.
+     * @return its sequence number, 0 if the buffer is full
+     */
+    public long offerTag (int tag, long bits, long status, long sourceTime, long serverTime){
+        long position = claim();
+        if (position < 0) return 0;
+        int idx = (int) position & mask;
+        tags[idx] = tag;
+        this.bits[idx] = bits;
+        statuses[idx] = status;
+        sourceTimes[idx] = sourceTime;
+        serverTimes[idx] = serverTime;
+        sequences.lazySet(idx, position + 1);
+        return position + 1;
+    }
+
+    /**
+     * Add the new value of a node, never blocks.
+     * @return its sequence number, 0 if the buffer is full
+     */
+    public long offerNode (NodeId nodeId, DataValue value){
+        long position = claim();
+        if (position < 0) return 0;
+        int idx = (int) position & mask;
+        tags[idx] = NODE;
+        nodeIds[idx] = nodeId;
+        nodeValues[idx] = value;
+        sequences.lazySet(idx, position + 1);
+        return position + 1;
+    }
+
+    /**
+     * @return the position owned by the caller, -1 if the buffer is full
+     */
+    private long claim (){
+        long position = tail.get();
+        while (true) {
+            long distance = sequences.get((int) position & mask) - position;
+            if (distance == 0) {
+                if (tail.compareAndSet(position, position + 1)) return position;
+            }
+            // The consumer hasn't freed this slot yet: the buffer is full
+            else if (distance < 0) return -1;
+            position = tail.get();
+        }
+    }
+
+    /**
+     * Move at most maxChanges changes to batch, in sequence order, stopping at the first one still being written.
+     * Callers must not drain concurrently.
+     * @return the number of moved changes
+     */
+    public int drain (ReplicationBatch batch, int maxChanges){
+        int count = 0;
+        while (count < maxChanges) {
+            int idx = (int) head & mask;
+            if (sequences.get(idx) != head + 1) break;
+            if (tags[idx] == NODE) {
+                batch.addNode(nodeIds[idx], nodeValues[idx]);
+                nodeIds[idx] = null;
+                nodeValues[idx] = null;
+            }
+            else {
+                batch.addTag(tags[idx], bits[idx], statuses[idx], sourceTimes[idx], serverTimes[idx]);
+            }
+            sequences.lazySet(idx, head + mask + 1);
+            consumed = ++head;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the sequence number the next drained change has
+     */
+    public long getNextDrainSequence (){
+        return consumed + 1;
+    }
+
+    /**
+     * @return the sequence number of the last change added, or being added
+     */
+    public long getLastSequence (){
+        return tail.get();
+    }
+
+    public int capacity (){
+        return mask + 1;
+    }
+}
@@ -0,0 +1,144 @@
+package serverLogic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ingestion stage between the devices and the namespace.
+ * Producers publish samples into a SampleRingBuffer from any thread, a single consumer thread drains it in batches
+ * and writes every sample into the namespace by tag index. When the namespace can't keep up the buffer fills and
+ * further samples are dropped, see getDroppedCount().
+ * An idle consumer backs off from spinning to yielding, to parks of growing length, and finally parks until the
+ * next publish wakes it up.
+ */
+public class SampleIngestion {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+    private static final int SPIN_ROUNDS = 100;
+    private static final int YIELD_ROUNDS = 100;
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String name;
+    private final SampleRingBuffer buffer;
+    private final SampleRingBuffer.SampleConsumer writer;
+    private final int batchSize;
+    private volatile boolean running = false;
+    // Set by the consumer before it parks until the next publish
+    private volatile boolean consumerParked = false;
+    private Thread consumerThread;
+
+    public SampleIngestion (String name, ExampleNamespace namespace){
+        this(name, namespace::writeSample, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    public SampleIngestion (String name, SampleRingBuffer.SampleConsumer writer, int capacity, int batchSize){
+        this.name = name;
+        this.writer = writer;
+        this.buffer = new SampleRingBuffer(capacity);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Publish a sample without blocking.
+     * @return false if the sample has been dropped because the buffer is full
+     */
+    public boolean publish (int tag, long timestamp, double value){
+        if (!buffer.offer(tag, timestamp, value)) return false;
+        if (consumerParked) LockSupport.unpark(consumerThread);
+        return true;
+    }
+
+    public boolean publish (int tag, double value){
+        return publish(tag, System.currentTimeMillis(), value);
+    }
+
+    public synchronized SampleIngestion start (){
+        if (running) return this;
+        running = true;
+        consumerThread = new Thread(this::consume, name + "-ingestion");
+        consumerThread.setDaemon(true);
+        consumerThread.start();
+        logger.info("{} ingestion started, capacity {} batch {}", name, buffer.capacity(), batchSize);
+        return this;
+    }
+
+    public synchronized void stop (){
+        if (!running) return;
+        running = false;
+        LockSupport.unpark(consumerThread);
+        try {
+            consumerThread.join(1000);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("{} ingestion stopped: published {} consumed {} dropped {}",
+                    name, getPublishedCount(), getConsumedCount(), getDroppedCount());
+    }
+
+    private void consume (){
+        int idleRounds = 0;
+        while (running) {
+            try {
+                if (buffer.drain(writer, batchSize) == 0) idle(idleRounds++);
+                else idleRounds = 0;
+            }
+            catch (RuntimeException e) {
+                logger.error("{} ingestion failed to write a sample: {}", name, e.getMessage(), e);
+            }
+        }
+        // Flush what has been published before the stop
+        buffer.drain(writer, buffer.capacity());
+    }
+
+    private void idle (int round){
+        if (round < SPIN_ROUNDS) {
+            Thread.onSpinWait();
+            return;
+        }
+        if (round < SPIN_ROUNDS + YIELD_ROUNDS) {
+            Thread.yield();
+            return;
+        }
+        long parkNanos = MIN_PARK_NANOS << Math.min(round - SPIN_ROUNDS - YIELD_ROUNDS, 20);
+        if (parkNanos <= MAX_PARK_NANOS) {
+            LockSupport.parkNanos(parkNanos);
+            return;
+        }
+        consumerParked = true;
+        // The flag and the buffer tail are both volatile: either a producer sees the flag, or this sees the sample
+        if (running && buffer.size() == 0) LockSupport.park(this);
+        consumerParked = false;
+    }
+
+    public boolean isRunning (){
+        return running;
+    }
+
+    public int getBacklog (){
+        return buffer.size();
+    }
+
+    public int getCapacity (){
+        return buffer.capacity();
+    }
+
+    public long getPublishedCount (){
+        return buffer.getPublishedCount();
+    }
+
+    public long getConsumedCount (){
+        return buffer.getConsumedCount();
+    }
+
+    public long getDroppedCount (){
+        return buffer.getDroppedCount();
+    }
+}
@@ -0,0 +1,121 @@
+package serverLogic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded lock-free ring buffer of (tag, timestamp, value) samples, many producers and a single consumer.
+ * Samples are kept in primitive columns so that publishing doesn't allocate. Each slot carries a sequence number
+ * telling whether it is free for the producer owning position p (sequence == p) or readable by the consumer
+ * (sequence == p + 1).
+ */
+public class SampleRingBuffer {
+
+    @FunctionalInterface
+    public interface SampleConsumer {
+        void accept (int tag, long timestamp, double value);
+    }
+
+    private final int mask;
+    private final int[] tags;
+    private final long[] timestamps;
+    private final double[] values;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong();
+    // Only touched by the consumer thread
+    private long head = 0;
+    private volatile long consumed = 0;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param capacity rounded up to the next power of two
+     */
+    public SampleRingBuffer (int capacity){
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        mask = size - 1;
+        tags = new int[size];
+        timestamps = new long[size];
+        values = new double[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+    }
+
+    /**
+     * Publish a sample, never blocks.
+     * @return false if the buffer is full, the sample is dropped and counted as such
+     */
+    public boolean offer (int tag, long timestamp, double value){
+        long position = tail.get();
+        while (true) {
+            int idx = (int) position & mask;
+            long distance = sequences.get(idx) - position;
+            if (distance == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    tags[idx] = tag;
+                    timestamps[idx] = timestamp;
+                    values[idx] = value;
+                    sequences.lazySet(idx, position + 1);
+                    published.increment();
+                    return true;
+                }
+                position = tail.get();
+            }
+            else if (distance < 0) {
+                // The consumer hasn't freed this slot yet: the buffer is full
+                dropped.increment();
+                return false;
+            }
+            else position = tail.get();
+        }
+    }
+
+    /**
+     * Hand at most maxSamples samples to consumer, in publication order. Must be called by one thread only.
+     * @return the number of consumed samples
+     */
+    public int drain (SampleConsumer consumer, int maxSamples){
+        int count = 0;
+        while (count < maxSamples) {
+            int idx = (int) head & mask;
+            if (sequences.get(idx) != head + 1) break;
+            int tag = tags[idx];
+            long timestamp = timestamps[idx];
+            double value = values[idx];
+            // Free the slot first, a failing consumer must not stall the buffer
+            sequences.lazySet(idx, head + mask + 1);
+            consumed = ++head;
+            count++;
+            consumer.accept(tag, timestamp, value);
+        }
+        return count;
+    }
+
+    public int capacity (){
+        return mask + 1;
+    }
+
+    /**
+     * @return an estimate of the samples waiting to be consumed
+     */
+    public int size (){
+        return (int) Math.max(0, Math.min(capacity(), tail.get() - consumed));
+    }
+
+    public long getPublishedCount (){
+        return published.sum();
+    }
+
+    public long getDroppedCount (){
+        return dropped.sum();
+    }
+
+    public long getConsumedCount (){
+        return consumed;
+    }
+}
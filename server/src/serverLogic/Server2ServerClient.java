@@ -26,8 +26,9 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
@@ -41,6 +42,16 @@ public class Server2ServerClient implements ClientExample {
     private final AtomicLong clientHandles = new AtomicLong(1L);
     private CompletableFuture<OpcUaClient> futureDisconnect;
 
+    private static final String KEY_STORE_NAME = "server2server-client.pfx";
+
+    // Discovery results and key material outlive the watchers, they don't change while the process runs
+    private static final Map<String, List<EndpointDescription>> endpointCache = new ConcurrentHashMap<>();
+    private static final Map<String, KeyStoreLoader> keyStoreCache = new ConcurrentHashMap<>();
+
+    // Kept connected between two watches, so that its session is reused or reactivated rather than recreated
+    private OpcUaClient client;
+    private UaSubscription subscription;
+
     public Server2ServerClient (String clientId){
         this.clientId = clientId;
     }
@@ -54,20 +65,27 @@ public class Server2ServerClient implements ClientExample {
         endpointURL = url;
     }
 
-    private OpcUaClient createClient() throws Exception {
+    /**
+     * Load, or generate on a first run, the key material of the watchers ahead of their first startup.
+     */
+    public static void preloadKeyStore () throws Exception {
         Path securityTempDir = Paths.get(System.getProperty("java.io.tmpdir"), "security");
         Files.createDirectories(securityTempDir);
-        if (!Files.exists(securityTempDir)) {
-            throw new Exception("unable to create security dir: " + securityTempDir);
-        }
-        LoggerFactory.getLogger(getClass())
-                .info("security temp dir: {}", securityTempDir.toAbsolutePath());
-
-        KeyStoreLoader loader = new KeyStoreLoader().loadClientKeyStore(securityTempDir, "server2server-client.pfx");
+        loadKeyStore(securityTempDir, KEY_STORE_NAME);
+    }
 
-        SecurityPolicy securityPolicy = getSecurityPolicy();
+    private static synchronized KeyStoreLoader loadKeyStore (Path securityDir, String pfxName) throws Exception {
+        KeyStoreLoader loader = keyStoreCache.get(pfxName);
+        if (loader == null) {
+            loader = new KeyStoreLoader().loadClientKeyStore(securityDir, pfxName);
+            keyStoreCache.put(pfxName, loader);
+        }
+        return loader;
+    }
 
-        List<EndpointDescription> endpoints;
+    private List<EndpointDescription> getEndpoints () throws Exception {
+        List<EndpointDescription> endpoints = endpointCache.get(getEndpointUrl());
+        if (endpoints != null) return endpoints;
 
         try {
             endpoints = DiscoveryClient.getEndpoints(getEndpointUrl()).get();
@@ -84,6 +102,24 @@ public class Server2ServerClient implements ClientExample {
             logger.info("Trying explicit discovery URL: {}", discoveryUrl);
             endpoints = DiscoveryClient.getEndpoints(discoveryUrl).get();
         }
+        endpointCache.put(getEndpointUrl(), endpoints);
+        return endpoints;
+    }
+
+    private OpcUaClient createClient() throws Exception {
+        Path securityTempDir = Paths.get(System.getProperty("java.io.tmpdir"), "security");
+        Files.createDirectories(securityTempDir);
+        if (!Files.exists(securityTempDir)) {
+            throw new Exception("unable to create security dir: " + securityTempDir);
+        }
+        LoggerFactory.getLogger(getClass())
+                .info("security temp dir: {}", securityTempDir.toAbsolutePath());
+
+        KeyStoreLoader loader = loadKeyStore(securityTempDir, KEY_STORE_NAME);
+
+        SecurityPolicy securityPolicy = getSecurityPolicy();
+
+        List<EndpointDescription> endpoints = getEndpoints();
 
         EndpointDescription endpoint = endpoints.stream()
                 .filter(e -> e.getSecurityPolicyUri().equals(securityPolicy.getUri()))
@@ -109,13 +145,13 @@ public class Server2ServerClient implements ClientExample {
 
     @Override
     public void run (OpcUaClient client, CompletableFuture<OpcUaClient> future) throws Exception{
-        // Connect to the server and ask for its state to return
+        // Connect to the server and ask for its state to return, a no-op when the session is still up
         logger.info("Connecting {} to {}", clientId, getEndpointUrl());
         client.connect().get();
         ServerState oldState = ((ServerNode) client.getAddressSpace().getObjectNode(Identifiers.Server).get()).getServerStatusNode().get().getState().get();
 
         // create a subscription and a monitored item
-        UaSubscription subscription = client.getSubscriptionManager()
+        subscription = client.getSubscriptionManager()
             .createSubscription(1000.0).get();
 
         ReadValueId readValueId = new ReadValueId(
@@ -173,36 +209,65 @@ public class Server2ServerClient implements ClientExample {
     }
 
     public CompletableFuture<Server2ServerClient> startup(){
+        CompletableFuture<OpcUaClient> watch = new CompletableFuture<>();
+        futureDisconnect = watch;
         try {
-            OpcUaClient client = createClient();
-            futureDisconnect = new CompletableFuture<>();
-            futureDisconnect.whenCompleteAsync((c, ex) -> {
-                if (ex != null) logger.error("{}: Error running example: {}\n{}", clientId, ex, ex.getMessage());
-
-                try {
-                    logger.info("Disconnecting {}", clientId);
-                    c.disconnect().get();
-                }
-                catch (InterruptedException | ExecutionException e) {
-                    logger.error("Error disconnecting {}: {}.\n{}", clientId, e.getMessage(), e);
-                }
-            });
+            if (client == null) client = createClient();
+            OpcUaClient watchingClient = client;
             try {
-                run(client, futureDisconnect);
-                //future.get(1000, TimeUnit.SECONDS); //not required since there is a future.complete on run()
+                run(watchingClient, watch);
+                // Taken now, the next watch replaces the field before this one is over
+                UaSubscription watched = subscription;
+                watch.whenCompleteAsync((c, ex) -> {
+                    if (ex != null) logger.error("{}: Error running example: {}\n{}", clientId, ex, ex.getMessage());
+                    // Keep the session for the next watch, only the subscription goes away
+                    releaseSubscription(watchingClient, watched);
+                });
             } catch (Throwable t) {
                 logger.error("Error running client example: {}", t.getMessage(), t);
-                futureDisconnect.completeExceptionally(t);
+                // The cached endpoints may be the reason, discover them again next time
+                endpointCache.remove(getEndpointUrl());
+                disconnect();
+                watch.completeExceptionally(t);
             }
         }
         catch (Throwable t) {
             logger.error("Error creating {}: {}\n{}", clientId, t, t.getMessage());
-            futureDisconnect.completeExceptionally(t);
+            endpointCache.remove(getEndpointUrl());
+            watch.completeExceptionally(t);
         }
-        return futureDisconnect.thenApply((c) -> Server2ServerClient.this);
+        return watch.thenApply((c) -> Server2ServerClient.this);
+    }
+
+    private void releaseSubscription (OpcUaClient watchingClient, UaSubscription watched){
+        if (watched == null) return;
+        watchingClient.getSubscriptionManager()
+                      .deleteSubscription(watched.getSubscriptionId())
+                      .exceptionally((ex) -> {
+                          // The server may be gone already, its subscriptions with it
+                          logger.debug("{} can't delete its subscription: {}", clientId, ex.getMessage());
+                          return null;
+                      });
+    }
+
+    private CompletableFuture<Server2ServerClient> disconnect (){
+        OpcUaClient connected = client;
+        client = null;
+        if (connected == null) return CompletableFuture.completedFuture(this);
+        logger.info("Disconnecting {}", clientId);
+        return connected.disconnect()
+                        .handle((c, ex) -> {
+                            if (ex != null) logger.error("Error disconnecting {}: {}", clientId, ex.getMessage(), ex);
+                            return Server2ServerClient.this;
+                        });
     }
 
+    /**
+     * Disconnect once the current watch is over, however it ended; right away if there never was one.
+     */
     public CompletableFuture<Server2ServerClient> shutdown (){
-        return futureDisconnect.thenApply((c) -> Server2ServerClient.this);
+        CompletableFuture<OpcUaClient> watch = futureDisconnect;
+        if (watch == null) return disconnect();
+        return watch.handle((c, ex) -> null).thenCompose((v) -> disconnect());
     }
 }
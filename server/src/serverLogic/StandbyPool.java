@@ -0,0 +1,136 @@
+package serverLogic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Spare RedundantServer instances, fully built with their namespaces started, kept for each server id of a set.
+ * A stopped Milo server can't be started again, so a failed server is swapped for a spare instead of being rebuilt
+ * on the failover path. Spares are built in background, one every refillMillis at most, up to sizePerServer for
+ * each id.
+ */
+public class StandbyPool {
+
+    public static final int DEFAULT_SIZE_PER_SERVER = 1;
+    public static final long DEFAULT_REFILL_MILLIS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Function<String, RedundantServer> factory;
+    private final int sizePerServer;
+    private final Map<String, Queue<RedundantServer>> spares = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LatencyHistogram buildTime = new LatencyHistogram();
+
+    /**
+     * @param factory builds a server, ready to be started, for a server id
+     */
+    public StandbyPool (Collection<String> serverIds, Function<String, RedundantServer> factory,
+                        int sizePerServer, long refillMillis){
+        this.factory = factory;
+        this.sizePerServer = sizePerServer;
+        serverIds.forEach(id -> spares.put(id, new ConcurrentLinkedQueue<>()));
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "standby-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::refillOne, 0, refillMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Build a pool sized by the standby.poolSize and standby.refillMillis system properties.
+     */
+    public static StandbyPool fromSystemProperties (Collection<String> serverIds,
+                                                    Function<String, RedundantServer> factory){
+        return new StandbyPool(serverIds, factory,
+                               Integer.getInteger("standby.poolSize", DEFAULT_SIZE_PER_SERVER),
+                               Long.getLong("standby.refillMillis", DEFAULT_REFILL_MILLIS));
+    }
+
+    /**
+     * @return a spare for serverId, or null if none is ready yet
+     */
+    public RedundantServer take (String serverId){
+        Queue<RedundantServer> queue = spares.get(serverId);
+        RedundantServer spare = (queue == null) ? null : queue.poll();
+        if (spare != null) hits.increment();
+        else misses.increment();
+        return spare;
+    }
+
+    private void refillOne (){
+        // Refill the emptiest queue first so that every id gets a spare before any gets a second one
+        spares.entrySet().stream()
+              .filter(e -> e.getValue().size() < sizePerServer)
+              .min((a, b) -> Integer.compare(a.getValue().size(), b.getValue().size()))
+              .ifPresent(e -> {
+                  long start = System.nanoTime();
+                  try {
+                      e.getValue().add(factory.apply(e.getKey()));
+                      buildTime.record(System.nanoTime() - start);
+                      logger.info("Built a spare {} in {} ms", e.getKey(), (System.nanoTime() - start) / 1_000_000);
+                  }
+                  catch (RuntimeException ex) {
+                      logger.error("Can't build a spare {}: {}", e.getKey(), ex.getMessage(), ex);
+                  }
+              });
+    }
+
+    public int getSize (){
+        return spares.values().stream().mapToInt(Queue::size).sum();
+    }
+
+    public int getSize (String serverId){
+        Queue<RedundantServer> queue = spares.get(serverId);
+        return (queue == null) ? 0 : queue.size();
+    }
+
+    /**
+     * @return the number of failovers served by a spare
+     */
+    public long getHitCount (){
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of failovers that found no spare and had to build a server
+     */
+    public long getMissCount (){
+        return misses.sum();
+    }
+
+    public LatencyHistogram getBuildTime (){
+        return buildTime;
+    }
+
+    /**
+     * Stop building spares and release the ones never taken.
+     */
+    public void shutdown (){
+        executor.shutdownNow();
+        spares.values().forEach(queue -> {
+            RedundantServer spare;
+            while ((spare = queue.poll()) != null) {
+                String serverId = spare.getServerId();
+                spare.discard().whenComplete((s, ex) -> {
+                    if (ex != null) logger.warn("Can't release a spare {}: {}", serverId, ex.getMessage());
+                });
+            }
+        });
+    }
+}
@@ -0,0 +1,78 @@
+package serverLogic;
+
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Records how long each startup phase takes, phases running in parallel included, and reports them as a table of
+ * start offset and duration.
+ */
+public class StartupTimer {
+
+    private final String name;
+    private final long originNanos = System.nanoTime();
+    private final Queue<Phase> phases = new ConcurrentLinkedQueue<>();
+
+    private static class Phase {
+        final String name;
+        final String thread;
+        final long startNanos;
+        final long durationNanos;
+
+        Phase (String name, String thread, long startNanos, long durationNanos){
+            this.name = name;
+            this.thread = thread;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+        }
+    }
+
+    public StartupTimer (String name){
+        this.name = name;
+    }
+
+    /**
+     * Run a phase on the calling thread and record it.
+     */
+    public <T> T time (String phase, Callable<T> task) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return task.call();
+        }
+        finally {
+            phases.add(new Phase(phase, Thread.currentThread().getName(), start - originNanos, System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Same as time(), for phases run by an executor: checked exceptions are wrapped in a CompletionException.
+     */
+    public <T> T timeAsync (String phase, Callable<T> task){
+        try {
+            return time(phase, task);
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    public long getElapsedMillis (){
+        return (System.nanoTime() - originNanos) / 1_000_000;
+    }
+
+    public String report (){
+        StringBuilder report = new StringBuilder(String.format("%s startup: %d ms%n", name, getElapsedMillis()));
+        report.append(String.format("  %-32s %10s %10s  %s%n", "phase", "start ms", "took ms", "thread"));
+        phases.stream()
+              .sorted(Comparator.comparingLong(p -> p.startNanos))
+              .forEach(p -> report.append(String.format("  %-32s %10.1f %10.1f  %s%n",
+                      p.name, p.startNanos / 1e6, p.durationNanos / 1e6, p.thread)));
+        return report.toString();
+    }
+}
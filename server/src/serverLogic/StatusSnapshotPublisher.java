@@ -0,0 +1,169 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.stack.core.types.enumerated.ServerState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Samples the state of a RedundantServerSet at a fixed rate into immutable snapshots, so that dashboards read one
+ * volatile field per frame instead of walking the address space of the servers.
+ * In on-change mode a snapshot equal to the previous one isn't published: the latest snapshot keeps its identity
+ * and listeners aren't called.
+ */
+public class StatusSnapshotPublisher {
+
+    public static final long DEFAULT_PERIOD_MILLIS = 100;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final RedundantServerSet serverSet;
+    private final long periodMillis;
+    private final boolean onlyOnChange;
+    private final List<Consumer<Snapshot>> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService executor;
+
+    private volatile Snapshot latest = Snapshot.EMPTY;
+    private long sequence;
+
+    /**
+     * State of the current server and of its standby at a point in time. Fields of a missing server are null.
+     */
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(0, null, null, null, null, null);
+
+        private final long sequence;
+        private final String masterId;
+        private final ServerState masterState;
+        private final Double analogValue;
+        private final String secondaryId;
+        private final ServerState secondaryState;
+
+        Snapshot (long sequence, String masterId, ServerState masterState, Double analogValue,
+                  String secondaryId, ServerState secondaryState){
+            this.sequence = sequence;
+            this.masterId = masterId;
+            this.masterState = masterState;
+            this.analogValue = analogValue;
+            this.secondaryId = secondaryId;
+            this.secondaryState = secondaryState;
+        }
+
+        /**
+         * @return the position of this snapshot among the published ones from 1, 0 for the empty one
+         */
+        public long getSequence (){
+            return sequence;
+        }
+
+        public String getMasterId (){
+            return masterId;
+        }
+
+        public ServerState getMasterState (){
+            return masterState;
+        }
+
+        public Double getAnalogValue (){
+            return analogValue;
+        }
+
+        public String getSecondaryId (){
+            return secondaryId;
+        }
+
+        public ServerState getSecondaryState (){
+            return secondaryState;
+        }
+
+        /**
+         * @return true if other holds the same state, whatever its sequence
+         */
+        public boolean sameStateAs (Snapshot other){
+            return Objects.equals(masterId, other.masterId)
+                && masterState == other.masterState
+                && Objects.equals(analogValue, other.analogValue)
+                && Objects.equals(secondaryId, other.secondaryId)
+                && secondaryState == other.secondaryState;
+        }
+    }
+
+    public StatusSnapshotPublisher (RedundantServerSet serverSet, long periodMillis, boolean onlyOnChange){
+        this.serverSet = serverSet;
+        this.periodMillis = periodMillis;
+        this.onlyOnChange = onlyOnChange;
+    }
+
+    /**
+     * Build a publisher configured by the ui.snapshotMillis and ui.snapshotOnChange system properties.
+     */
+    public static StatusSnapshotPublisher fromSystemProperties (RedundantServerSet serverSet){
+        return new StatusSnapshotPublisher(serverSet,
+                                           Long.getLong("ui.snapshotMillis", DEFAULT_PERIOD_MILLIS),
+                                           Boolean.parseBoolean(System.getProperty("ui.snapshotOnChange", "true")));
+    }
+
+    /**
+     * @param listener told about every published snapshot, on the sampling thread
+     */
+    public StatusSnapshotPublisher addListener (Consumer<Snapshot> listener){
+        listeners.add(listener);
+        return this;
+    }
+
+    public synchronized StatusSnapshotPublisher start (){
+        if (executor != null) return this;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "status-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::sample, 0, periodMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    private void sample (){
+        try {
+            RedundantServer master = serverSet.getCurrentServer();
+            RedundantServer secondary = serverSet.getCurrentClient();
+            Snapshot next = new Snapshot(
+                sequence + 1,
+                (master != null) ? master.getServerId() : null,
+                (master != null) ? master.getServerState() : null,
+                (master != null) ? master.getAnalogValue() : null,
+                (secondary != null) ? secondary.getServerId() : null,
+                (secondary != null) ? secondary.getServerState() : null
+            );
+            if (onlyOnChange && next.sameStateAs(latest)) return;
+
+            sequence++;
+            latest = next;
+            for (Consumer<Snapshot> listener : listeners) {
+                listener.accept(next);
+            }
+        }
+        catch (RuntimeException e) {
+            // Servers come and go during a failover, the next sample will see the new ones
+            logger.debug("Can't sample the server set: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return the last published snapshot, an empty one with sequence 0 before the first
+     */
+    public Snapshot getLatest (){
+        return latest;
+    }
+
+    public synchronized void shutdown (){
+        if (executor != null) executor.shutdownNow();
+        executor = null;
+    }
+}
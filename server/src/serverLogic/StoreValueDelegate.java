@@ -0,0 +1,106 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.sdk.server.api.nodes.VariableNode;
+import org.eclipse.milo.opcua.sdk.server.nodes.AttributeContext;
+import org.eclipse.milo.opcua.sdk.server.nodes.delegates.AttributeDelegate;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.UaException;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+
+/**
+ * Serves the Value attribute of a node from a TagValueStore row.
+ * The DataValue only exists at this boundary: it's built when the value is read and taken apart when written.
+ */
+public class StoreValueDelegate implements AttributeDelegate {
+
+    private final TagValueStore store;
+    private final int tag;
+    private final PushSubscriptionModel pushModel;
+
+    public StoreValueDelegate (TagValueStore store, int tag, PushSubscriptionModel pushModel){
+        this.store = store;
+        this.tag = tag;
+        this.pushModel = pushModel;
+    }
+
+    @Override
+    public DataValue getValue (AttributeContext context, VariableNode node) throws UaException {
+        return toDataValue(store, tag);
+    }
+
+    @Override
+    public void setValue (AttributeContext context, VariableNode node, DataValue value) throws UaException {
+        long bits = toBits(store.getType(tag), value.getValue().getValue());
+        long status = (value.getStatusCode() != null) ? value.getStatusCode().getValue() : StatusCode.GOOD.getValue();
+        long serverTime = DateTime.now().getUtcTime();
+        long sourceTime = (value.getSourceTime() != null) ? value.getSourceTime().getUtcTime() : serverTime;
+
+        store.write(tag, bits, status, sourceTime, serverTime);
+        if (pushModel.isMonitored(node.getNodeId())) pushModel.push(node.getNodeId(), toDataValue(store, tag));
+    }
+
+    static DataValue toDataValue (TagValueStore store, int tag){
+        TagValueStore.Row row = store.readRow(tag, new TagValueStore.Row());
+        return new DataValue(
+                new Variant(toObject(row)),
+                new StatusCode(row.status),
+                new DateTime(row.sourceTime),
+                new DateTime(row.serverTime)
+        );
+    }
+
+    private static Object toObject (TagValueStore.Row row){
+        switch (row.type) {
+            case DOUBLE:
+                return Double.longBitsToDouble(row.bits);
+            case LONG:
+                return row.bits;
+            case INT:
+                return (int) row.bits;
+            case BOOLEAN:
+            default:
+                return row.bits != 0;
+        }
+    }
+
+    /**
+     * @return the raw bits of value for a tag of the given type
+     * @throws UaException Bad_TypeMismatch if value can't be stored in a tag of that type
+     */
+    static long toBits (TagValueStore.ValueType type, Object value) throws UaException {
+        switch (type) {
+            case DOUBLE:
+                if (value instanceof Double) return Double.doubleToRawLongBits((Double) value);
+                break;
+            case LONG:
+                if (value instanceof Long) return (Long) value;
+                break;
+            case INT:
+                if (value instanceof Integer) return (Integer) value;
+                break;
+            case BOOLEAN:
+                if (value instanceof Boolean) return ((Boolean) value) ? 1 : 0;
+                break;
+        }
+        throw new UaException(StatusCodes.Bad_TypeMismatch, "can't store " + value + " as " + type);
+    }
+
+    /**
+     * @return the store type holding every value of the concrete dataType, or null if the node has to keep a
+     * Variant, e.g. for BaseDataType or an abstract type such as Integer, whose values may be of several types
+     */
+    static TagValueStore.ValueType typeOf (NodeId dataType){
+        if (Identifiers.Double.equals(dataType) || Identifiers.Duration.equals(dataType)) {
+            return TagValueStore.ValueType.DOUBLE;
+        }
+        if (Identifiers.Int64.equals(dataType)) return TagValueStore.ValueType.LONG;
+        if (Identifiers.Int32.equals(dataType)) return TagValueStore.ValueType.INT;
+        if (Identifiers.Boolean.equals(dataType)) return TagValueStore.ValueType.BOOLEAN;
+        return null;
+    }
+}
@@ -0,0 +1,240 @@
+package serverLogic;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Off-heap columnar store of tag values, keyed by a dense tag index.
+ * Every tag has a type, version, status, source and server timestamp; its value lives in the column of its type.
+ * Columns are made of direct buffer chunks allocated on demand, so millions of values cost no heap and no garbage.
+ * Timestamps are OPC UA UtcTime ticks (100 ns since 1601). Rows are guarded by a per tag sequence lock: writers
+ * exclude each other, readers retry when they overlap a write.
+ */
+public class TagValueStore {
+
+    public enum ValueType {
+        DOUBLE(Double.BYTES), LONG(Long.BYTES), INT(Integer.BYTES), BOOLEAN(1);
+
+        private final int width;
+
+        ValueType (int width){
+            this.width = width;
+        }
+    }
+
+    /**
+     * Mutable holder filled by readRow().
+     */
+    public static class Row {
+        public ValueType type;
+        // Raw value: double bits, long, int or 0/1 for booleans
+        public long bits;
+        public long status;
+        public long sourceTime;
+        public long serverTime;
+
+        public double doubleValue (){
+            return (type == ValueType.DOUBLE) ? Double.longBitsToDouble(bits) : bits;
+        }
+    }
+
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_ROWS - 1;
+    private static final ValueType[] TYPES = ValueType.values();
+    private static final VarHandle VERSION = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private static class Column {
+        private final int width;
+        private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+
+        Column (int width){
+            this.width = width;
+        }
+
+        synchronized void ensure (int row){
+            int chunk = row >>> CHUNK_SHIFT;
+            ByteBuffer[] current = chunks;
+            if (chunk < current.length && current[chunk] != null) return;
+            ByteBuffer[] grown = Arrays.copyOf(current, Math.max(current.length, chunk + 1));
+            grown[chunk] = ByteBuffer.allocateDirect(width * CHUNK_ROWS).order(ByteOrder.nativeOrder());
+            chunks = grown;
+        }
+
+        ByteBuffer chunk (int row){
+            return chunks[row >>> CHUNK_SHIFT];
+        }
+
+        int offset (int row){
+            return (row & CHUNK_MASK) * width;
+        }
+    }
+
+    private final AtomicInteger size = new AtomicInteger();
+    private final Column types = new Column(1);
+    private final Column versions = new Column(Integer.BYTES);
+    private final Column statuses = new Column(Integer.BYTES);
+    private final Column sourceTimes = new Column(Long.BYTES);
+    private final Column serverTimes = new Column(Long.BYTES);
+    private final Column[] values = new Column[TYPES.length];
+
+    private volatile WriteListener writeListener;
+
+    /**
+     * Told about every write, e.g. to replicate the store. It is called with the row of the tag still locked, so
+     * that the writes of a tag reach it in store order; it must be short and must not read the store.
+     */
+    @FunctionalInterface
+    public interface WriteListener {
+        void onWrite (int tag, long bits, long status, long sourceTime, long serverTime);
+    }
+
+    public TagValueStore (){
+        for (ValueType type : TYPES) values[type.ordinal()] = new Column(type.width);
+    }
+
+    /**
+     * Allocate count consecutive tags of the given type.
+     * @return the index of the first one
+     */
+    public synchronized int addTags (ValueType type, int count){
+        int first = size.get();
+        if (count <= 0) return first;
+        for (int chunk = first >>> CHUNK_SHIFT; chunk <= (first + count - 1) >>> CHUNK_SHIFT; chunk++) {
+            int row = chunk << CHUNK_SHIFT;
+            types.ensure(row);
+            versions.ensure(row);
+            statuses.ensure(row);
+            sourceTimes.ensure(row);
+            serverTimes.ensure(row);
+            values[type.ordinal()].ensure(row);
+        }
+        for (int tag = first; tag < first + count; tag++) {
+            types.chunk(tag).put(types.offset(tag), (byte) type.ordinal());
+        }
+        size.set(first + count);
+        return first;
+    }
+
+    public int addTag (ValueType type){
+        return addTags(type, 1);
+    }
+
+    /**
+     * @param listener called on the writing thread after each write, null to remove it
+     */
+    public void setWriteListener (WriteListener listener){
+        writeListener = listener;
+    }
+
+    public int size (){
+        return size.get();
+    }
+
+    public ValueType getType (int tag){
+        return TYPES[types.chunk(tag).get(types.offset(tag))];
+    }
+
+    /**
+     * Write the raw value bits of tag, interpreted according to its type.
+     */
+    public void write (int tag, long bits, long status, long sourceTime, long serverTime){
+        ValueType type = getType(tag);
+        ByteBuffer versionChunk = versions.chunk(tag);
+        int versionOffset = versions.offset(tag);
+        int version = lock(versionChunk, versionOffset);
+        try {
+            Column column = values[type.ordinal()];
+            ByteBuffer chunk = column.chunk(tag);
+            int offset = column.offset(tag);
+            switch (type) {
+                case DOUBLE:
+                case LONG:
+                    chunk.putLong(offset, bits);
+                    break;
+                case INT:
+                    chunk.putInt(offset, (int) bits);
+                    break;
+                case BOOLEAN:
+                    chunk.put(offset, (byte) (bits != 0 ? 1 : 0));
+                    break;
+            }
+            statuses.chunk(tag).putInt(statuses.offset(tag), (int) status);
+            sourceTimes.chunk(tag).putLong(sourceTimes.offset(tag), sourceTime);
+            serverTimes.chunk(tag).putLong(serverTimes.offset(tag), serverTime);
+            // Under the lock: two writers of the tag must not reach the listener in the other order than the store
+            WriteListener listener = writeListener;
+            if (listener != null) listener.onWrite(tag, bits, status, sourceTime, serverTime);
+        }
+        finally {
+            VERSION.setRelease(versionChunk, versionOffset, version + 2);
+        }
+    }
+
+    public void writeDouble (int tag, double value, long status, long sourceTime, long serverTime){
+        write(tag, Double.doubleToRawLongBits(value), status, sourceTime, serverTime);
+    }
+
+    public void writeBoolean (int tag, boolean value, long status, long sourceTime, long serverTime){
+        write(tag, value ? 1 : 0, status, sourceTime, serverTime);
+    }
+
+    private static int lock (ByteBuffer chunk, int offset){
+        while (true) {
+            int version = (int) VERSION.getAcquire(chunk, offset);
+            if ((version & 1) == 0 && VERSION.compareAndSet(chunk, offset, version, version + 1)) return version;
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Read a consistent snapshot of the row of tag into row.
+     */
+    public Row readRow (int tag, Row row){
+        ValueType type = getType(tag);
+        Column column = values[type.ordinal()];
+        ByteBuffer versionChunk = versions.chunk(tag);
+        int versionOffset = versions.offset(tag);
+        ByteBuffer chunk = column.chunk(tag);
+        int offset = column.offset(tag);
+        while (true) {
+            int before = (int) VERSION.getAcquire(versionChunk, versionOffset);
+            if ((before & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            switch (type) {
+                case DOUBLE:
+                case LONG:
+                    row.bits = chunk.getLong(offset);
+                    break;
+                case INT:
+                    row.bits = chunk.getInt(offset);
+                    break;
+                case BOOLEAN:
+                    row.bits = chunk.get(offset);
+                    break;
+            }
+            row.status = statuses.chunk(tag).getInt(statuses.offset(tag)) & 0xFFFFFFFFL;
+            row.sourceTime = sourceTimes.chunk(tag).getLong(sourceTimes.offset(tag));
+            row.serverTime = serverTimes.chunk(tag).getLong(serverTimes.offset(tag));
+            VarHandle.loadLoadFence();
+            if ((int) VERSION.getAcquire(versionChunk, versionOffset) == before) {
+                row.type = type;
+                return row;
+            }
+        }
+    }
+
+    /**
+     * Read only the value of a DOUBLE tag, a single aligned 8 byte read is never torn.
+     */
+    public double readDouble (int tag){
+        Column column = values[ValueType.DOUBLE.ordinal()];
+        return column.chunk(tag).getDouble(column.offset(tag));
+    }
+}
@@ -0,0 +1,496 @@
+package serverLogic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Append-only history of one double signal, stored in memory-mapped segment files of a directory.
+ * Points are grouped in blocks of up to BLOCK_POINTS, compressed the Gorilla way: timestamps as delta of delta,
+ * values as the XOR with the previous one. A block is written to its segment once full (or on flush()), and the
+ * first and last timestamps of every written block are kept in a sparse in-memory index, rebuilt from the segment
+ * headers when the directory is opened again. A time range query seeks to its first block by binary search and
+ * only decodes the blocks overlapping the range.
+ * Timestamps must not go backwards; a point older than the last one is dropped and counted. One thread appends
+ * while others query.
+ */
+public class TimeSeriesStore {
+
+    public static final int BLOCK_POINTS = 1024;
+    public static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+
+    private static final int BLOCK_MAGIC = 0x54534231;
+    private static final int HEADER_BYTES = 32;
+    // Worst case per point: 4 + 64 bits of timestamp, 2 + 5 + 6 + 64 bits of value
+    private static final int MAX_BLOCK_WORDS = (64 + BLOCK_POINTS * (68 + 77) + 63) / 64;
+    private static final int MAX_BLOCK_BYTES = HEADER_BYTES + MAX_BLOCK_WORDS * 8;
+
+    private static final Map<Path, TimeSeriesStore> OPEN_STORES = new ConcurrentHashMap<>();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Receives the points of a query, returns false to stop it.
+     */
+    @FunctionalInterface
+    public interface PointConsumer {
+        boolean accept (long timestampMillis, double value);
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+
+    // Guarded by this
+    private MappedByteBuffer[] segments = new MappedByteBuffer[4];
+    private int segmentCount;
+    private int writeOffset;
+
+    // Sparse index, one entry per written block, guarded by this
+    private long[] blockFirst = new long[1024];
+    private long[] blockLast = new long[1024];
+    private int[] blockSegment = new int[1024];
+    private int[] blockOffset = new int[1024];
+    private int blockCount;
+
+    // Block being filled, guarded by this
+    private final BlockEncoder openBlock = new BlockEncoder();
+    private long pointCount;
+    private long droppedCount;
+
+    /**
+     * @return the store of directory, opened once per JVM: servers rebuilt with the same id keep appending to it
+     */
+    public static TimeSeriesStore open (Path directory){
+        return OPEN_STORES.computeIfAbsent(directory.toAbsolutePath(), d -> new TimeSeriesStore(d, DEFAULT_SEGMENT_BYTES));
+    }
+
+    /**
+     * @return the directory under which the servers keep their history, set by the history.dir system property
+     */
+    public static Path baseDirectory (){
+        return Paths.get(System.getProperty("history.dir",
+                                            Paths.get(System.getProperty("java.io.tmpdir"), "history").toString()));
+    }
+
+    public TimeSeriesStore (Path directory, int segmentBytes){
+        if (segmentBytes < MAX_BLOCK_BYTES) {
+            throw new IllegalArgumentException("segments must hold a block of " + MAX_BLOCK_BYTES + " bytes");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        try {
+            Files.createDirectories(directory);
+            Path[] files;
+            try (Stream<Path> list = Files.list(directory)) {
+                files = list.filter(p -> p.getFileName().toString().endsWith(".seg")).sorted().toArray(Path[]::new);
+            }
+            for (Path file : files) {
+                scan(map(file));
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Can't open the history in " + directory, e);
+        }
+        if (segmentCount > 0) {
+            logger.info("Opened {}: {} points in {} blocks, {} segments", directory, pointCount, blockCount, segmentCount);
+        }
+    }
+
+    private MappedByteBuffer map (Path file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            // A new segment is zero filled, so its first unwritten header reads as the end of the data
+            if (raf.length() < segmentBytes) raf.setLength(segmentBytes);
+            MappedByteBuffer segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            if (segmentCount == segments.length) segments = Arrays.copyOf(segments, segmentCount * 2);
+            segments[segmentCount++] = segment;
+            writeOffset = 0;
+            return segment;
+        }
+    }
+
+    private void scan (MappedByteBuffer segment){
+        int offset = 0;
+        while (offset + HEADER_BYTES <= segment.capacity() && segment.getInt(offset) == BLOCK_MAGIC) {
+            int count = segment.getInt(offset + 4);
+            int bitLength = segment.getInt(offset + 8);
+            index(segment.getLong(offset + 16), segment.getLong(offset + 24), segmentCount - 1, offset);
+            pointCount += count;
+            offset += HEADER_BYTES + words(bitLength) * 8;
+        }
+        writeOffset = offset;
+    }
+
+    private void index (long first, long last, int segment, int offset){
+        if (blockCount == blockFirst.length) {
+            int size = blockCount * 2;
+            blockFirst = Arrays.copyOf(blockFirst, size);
+            blockLast = Arrays.copyOf(blockLast, size);
+            blockSegment = Arrays.copyOf(blockSegment, size);
+            blockOffset = Arrays.copyOf(blockOffset, size);
+        }
+        blockFirst[blockCount] = first;
+        blockLast[blockCount] = last;
+        blockSegment[blockCount] = segment;
+        blockOffset[blockCount] = offset;
+        blockCount++;
+    }
+
+    private static int words (int bitLength){
+        return (bitLength + 63) >>> 6;
+    }
+
+    /**
+     * @return false if the point was dropped for being older than the last one
+     */
+    public synchronized boolean append (long timestampMillis, double value){
+        if (openBlock.count > 0 ? timestampMillis < openBlock.last
+                                : blockCount > 0 && timestampMillis < blockLast[blockCount - 1]) {
+            droppedCount++;
+            return false;
+        }
+        openBlock.append(timestampMillis, value);
+        pointCount++;
+        if (openBlock.count == BLOCK_POINTS) writeBlock();
+        return true;
+    }
+
+    private void writeBlock (){
+        int bytes = HEADER_BYTES + words(openBlock.bitLength) * 8;
+        try {
+            if (segmentCount == 0 || writeOffset + bytes > segmentBytes) {
+                map(directory.resolve(String.format("%08d.seg", segmentCount)));
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Can't add a segment to " + directory, e);
+        }
+        MappedByteBuffer segment = segments[segmentCount - 1];
+        int offset = writeOffset;
+        for (int i = 0; i < words(openBlock.bitLength); i++) {
+            segment.putLong(offset + HEADER_BYTES + i * 8, openBlock.words[i]);
+        }
+        segment.putInt(offset + 4, openBlock.count);
+        segment.putInt(offset + 8, openBlock.bitLength);
+        segment.putLong(offset + 16, openBlock.first);
+        segment.putLong(offset + 24, openBlock.last);
+        // Last, so that a block cut by a crash isn't read back
+        segment.putInt(offset, BLOCK_MAGIC);
+
+        index(openBlock.first, openBlock.last, segmentCount - 1, offset);
+        writeOffset = offset + bytes;
+        openBlock.reset();
+    }
+
+    /**
+     * Write the block being filled, even if not full, and force the segments to disk.
+     */
+    public synchronized void flush (){
+        if (openBlock.count > 0) writeBlock();
+        for (int i = 0; i < segmentCount; i++) segments[i].force();
+    }
+
+    /**
+     * Send the points of [fromMillis, toMillis) to consumer, oldest first or newest first.
+     * @return the number of points sent
+     */
+    public long query (long fromMillis, long toMillis, boolean reverse, PointConsumer consumer){
+        if (fromMillis >= toMillis) return 0;
+
+        // Take a consistent view, the blocks already written never change
+        long[] first, last;
+        int[] segmentOf, offsetOf;
+        int blocks;
+        MappedByteBuffer[] segmentView;
+        long[] openWords = null;
+        int openCount, openBits;
+        long openFirst;
+        synchronized (this) {
+            first = blockFirst;
+            last = blockLast;
+            segmentOf = blockSegment;
+            offsetOf = blockOffset;
+            blocks = blockCount;
+            segmentView = segments;
+            openCount = openBlock.count;
+            openBits = openBlock.bitLength;
+            openFirst = openBlock.first;
+            if (openCount > 0 && openBlock.first < toMillis && openBlock.last >= fromMillis) {
+                openWords = Arrays.copyOf(openBlock.words, words(openBits));
+            }
+        }
+
+        QueryState state = new QueryState(fromMillis, toMillis, reverse, consumer);
+        if (!reverse) {
+            // A timestamp repeated across a block boundary ends one block and starts the next: seek on the last ones
+            for (int b = ceilingBlock(last, blocks, fromMillis); b < blocks && first[b] < toMillis; b++) {
+                if (last[b] >= fromMillis && !state.emit(segmentView[segmentOf[b]], offsetOf[b])) return state.sent;
+            }
+            if (openWords != null) state.emit(openWords, openCount, openFirst);
+        }
+        else {
+            if (openWords != null && !state.emit(openWords, openCount, openFirst)) return state.sent;
+            for (int b = floorBlock(first, blocks, toMillis - 1); b >= 0 && last[b] >= fromMillis; b--) {
+                if (first[b] < toMillis && !state.emit(segmentView[segmentOf[b]], offsetOf[b])) return state.sent;
+            }
+        }
+        return state.sent;
+    }
+
+    /**
+     * @return the last block starting at or before time, -1 if none
+     */
+    private static int floorBlock (long[] first, int blocks, long time){
+        int low = 0, high = blocks - 1, found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (first[mid] <= time) {
+                found = mid;
+                low = mid + 1;
+            }
+            else high = mid - 1;
+        }
+        return found;
+    }
+
+    /**
+     * @return the first block ending at or after time, blocks if none
+     */
+    private static int ceilingBlock (long[] last, int blocks, long time){
+        int low = 0, high = blocks;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (last[mid] >= time) high = mid;
+            else low = mid + 1;
+        }
+        return low;
+    }
+
+    private static final class QueryState {
+        final long from, to;
+        final boolean reverse;
+        final PointConsumer consumer;
+        final BlockDecoder decoder = new BlockDecoder();
+        long sent;
+
+        QueryState (long from, long to, boolean reverse, PointConsumer consumer){
+            this.from = from;
+            this.to = to;
+            this.reverse = reverse;
+            this.consumer = consumer;
+        }
+
+        boolean emit (MappedByteBuffer segment, int offset){
+            int count = segment.getInt(offset + 4);
+            int bitLength = segment.getInt(offset + 8);
+            long first = segment.getLong(offset + 16);
+            int n = words(bitLength);
+            for (int i = 0; i < n; i++) decoder.words[i] = segment.getLong(offset + HEADER_BYTES + i * 8);
+            return emitDecoded(count, first);
+        }
+
+        boolean emit (long[] words, int count, long first){
+            System.arraycopy(words, 0, decoder.words, 0, words.length);
+            return emitDecoded(count, first);
+        }
+
+        private boolean emitDecoded (int count, long first){
+            decoder.decode(count, first);
+            for (int k = 0; k < count; k++) {
+                int i = reverse ? count - 1 - k : k;
+                long t = decoder.timestamps[i];
+                if (t < from || t >= to) continue;
+                sent++;
+                if (!consumer.accept(t, decoder.values[i])) return false;
+            }
+            return true;
+        }
+    }
+
+    public synchronized long getPointCount (){
+        return pointCount;
+    }
+
+    /**
+     * @return the number of points dropped for being older than the last one
+     */
+    public synchronized long getDroppedCount (){
+        return droppedCount;
+    }
+
+    public synchronized int getBlockCount (){
+        return blockCount;
+    }
+
+    /**
+     * @return the bytes used in the segments by the written blocks
+     */
+    public synchronized long getStoredBytes (){
+        return (segmentCount == 0) ? 0 : (long) (segmentCount - 1) * segmentBytes + writeOffset;
+    }
+
+    public Path getDirectory (){
+        return directory;
+    }
+
+    /**
+     * Gorilla encoder of one block, bits packed from the most significant one of each word.
+     */
+    private static final class BlockEncoder {
+        final long[] words = new long[MAX_BLOCK_WORDS];
+        int bitLength;
+        int count;
+        long first, last;
+        long previousDelta;
+        long previousBits;
+        int previousLeading, previousTrailing;
+
+        void reset (){
+            Arrays.fill(words, 0, words(bitLength), 0L);
+            bitLength = 0;
+            count = 0;
+            previousDelta = 0;
+        }
+
+        void append (long timestamp, double value){
+            long bits = Double.doubleToRawLongBits(value);
+            if (count == 0) {
+                first = timestamp;
+                write(bits, 64);
+                // No previous window yet
+                previousLeading = -1;
+            }
+            else {
+                long delta = timestamp - last;
+                long deltaOfDelta = delta - previousDelta;
+                if (deltaOfDelta == 0) write(0, 1);
+                else if (deltaOfDelta >= -64 && deltaOfDelta < 64) {
+                    write(0b10, 2);
+                    write(deltaOfDelta, 7);
+                }
+                else if (deltaOfDelta >= -256 && deltaOfDelta < 256) {
+                    write(0b110, 3);
+                    write(deltaOfDelta, 9);
+                }
+                else if (deltaOfDelta >= -2048 && deltaOfDelta < 2048) {
+                    write(0b1110, 4);
+                    write(deltaOfDelta, 12);
+                }
+                else {
+                    write(0b1111, 4);
+                    write(deltaOfDelta, 64);
+                }
+                previousDelta = delta;
+
+                long xor = bits ^ previousBits;
+                if (xor == 0) write(0, 1);
+                else {
+                    int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                    int trailing = Long.numberOfTrailingZeros(xor);
+                    if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                        // Meaningful bits fit in the previous window
+                        write(0b10, 2);
+                        write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                    }
+                    else {
+                        int meaningful = 64 - leading - trailing;
+                        write(0b11, 2);
+                        write(leading, 5);
+                        // 64 meaningful bits are written as 0
+                        write(meaningful & 63, 6);
+                        write(xor >>> trailing, meaningful);
+                        previousLeading = leading;
+                        previousTrailing = trailing;
+                    }
+                }
+            }
+            previousBits = bits;
+            last = timestamp;
+            count++;
+        }
+
+        private void write (long value, int n){
+            if (n < 64) value &= (1L << n) - 1;
+            int index = bitLength >>> 6;
+            int free = 64 - (bitLength & 63);
+            if (n <= free) {
+                words[index] |= value << (free - n);
+            }
+            else {
+                int rest = n - free;
+                words[index] |= value >>> rest;
+                words[index + 1] |= value << (64 - rest);
+            }
+            bitLength += n;
+        }
+    }
+
+    private static final class BlockDecoder {
+        final long[] words = new long[MAX_BLOCK_WORDS];
+        final long[] timestamps = new long[BLOCK_POINTS];
+        final double[] values = new double[BLOCK_POINTS];
+        int position;
+
+        void decode (int count, long first){
+            position = 0;
+            long timestamp = first;
+            long delta = 0;
+            long bits = read(64);
+            int leading = 0, trailing = 0;
+            timestamps[0] = timestamp;
+            values[0] = Double.longBitsToDouble(bits);
+            for (int i = 1; i < count; i++) {
+                long deltaOfDelta;
+                if (read(1) == 0) deltaOfDelta = 0;
+                else if (read(1) == 0) deltaOfDelta = signed(read(7), 7);
+                else if (read(1) == 0) deltaOfDelta = signed(read(9), 9);
+                else if (read(1) == 0) deltaOfDelta = signed(read(12), 12);
+                else deltaOfDelta = read(64);
+                delta += deltaOfDelta;
+                timestamp += delta;
+
+                if (read(1) == 1) {
+                    if (read(1) == 1) {
+                        leading = (int) read(5);
+                        int meaningful = (int) read(6);
+                        if (meaningful == 0) meaningful = 64;
+                        trailing = 64 - leading - meaningful;
+                    }
+                    bits ^= read(64 - leading - trailing) << trailing;
+                }
+                timestamps[i] = timestamp;
+                values[i] = Double.longBitsToDouble(bits);
+            }
+        }
+
+        private static long signed (long value, int n){
+            return (value << (64 - n)) >> (64 - n);
+        }
+
+        private long read (int n){
+            int index = position >>> 6;
+            int free = 64 - (position & 63);
+            long result;
+            if (n <= free) {
+                result = words[index] >>> (free - n);
+            }
+            else {
+                int rest = n - free;
+                result = ((words[index] & ((1L << free) - 1)) << rest) | (words[index + 1] >>> (64 - rest));
+            }
+            position += n;
+            return (n == 64) ? result : result & ((1L << n) - 1);
+        }
+    }
+}
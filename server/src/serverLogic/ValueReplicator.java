@@ -0,0 +1,274 @@
+package serverLogic;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams the value changes of the primary namespace to the standby ones, so that a promoted standby serves the
+ * last known values straight away.
+ * Writers hand their changes to a ReplicationRingBuffer without taking any lock, which gives them consecutive
+ * sequence numbers. The buffer is drained into batches every flushMillis, or as soon as maxBatchSize changes are
+ * pending, and the batches are applied in order on a single replication thread. A standby joining the set first
+ * receives a snapshot of the primary, and a standby seeing a hole in the sequence counts the missed changes as a gap.
+ */
+public class ValueReplicator {
+
+    public static final long DEFAULT_FLUSH_MILLIS = 20;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 4096;
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String name;
+    private final int maxBatchSize;
+    private final ExecutorService replicationExecutor;
+    private final ScheduledExecutorService flushExecutor;
+    private ScheduledFuture<?> flushFuture;
+
+    private final ReplicationRingBuffer changes;
+    // Held while draining changes, so that batches are submitted in sequence order; writers never take it
+    private final Object drainLock = new Object();
+    private volatile boolean stopped = false;
+
+    // Guarded by this
+    private ExampleNamespace source;
+
+    // Only modified on the replication thread, read from anywhere
+    private final Map<ExampleNamespace, Replica> replicas = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram replicationLag = new LatencyHistogram();
+
+    /**
+     * Replication state of a standby namespace.
+     */
+    public static class Replica {
+        private final ExampleNamespace namespace;
+        private volatile long appliedSequence;
+        private volatile long gapCount;
+
+        private Replica (ExampleNamespace namespace){
+            this.namespace = namespace;
+        }
+
+        public long getAppliedSequence (){
+            return appliedSequence;
+        }
+
+        /**
+         * @return the number of changes this standby never received
+         */
+        public long getGapCount (){
+            return gapCount;
+        }
+    }
+
+    public ValueReplicator (String name){
+        this(name, DEFAULT_FLUSH_MILLIS, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public ValueReplicator (String name, long flushMillis, int maxBatchSize){
+        if (maxBatchSize <= 0) throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        this.name = name;
+        this.maxBatchSize = maxBatchSize;
+        // Room for a few batches, writers only wait when the replication is that far behind
+        changes = new ReplicationRingBuffer(Math.max(4 * maxBatchSize, 1 << 16));
+        replicationExecutor = Executors.newSingleThreadExecutor(r -> daemon(r, name + "-replication"));
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, name + "-replication-flush"));
+        flushFuture = flushExecutor.scheduleWithFixedDelay(this::drain, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static Thread daemon (Runnable runnable, String threadName){
+        Thread thread = new Thread(runnable, threadName);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Replicate the changes of namespace from now on, instead of the ones of the previous source.
+     * Pending changes of the previous source are flushed first.
+     */
+    public synchronized ValueReplicator setSource (ExampleNamespace namespace){
+        if (source != null) source.setReplicator(null);
+        drain();
+        source = namespace;
+        if (source != null) source.setReplicator(this);
+        return this;
+    }
+
+    /**
+     * Make namespaces the standbys of the set: the new ones get a snapshot of the source, the missing ones are
+     * dropped. The source itself is never a standby.
+     */
+    public synchronized ValueReplicator setReplicas (Collection<ExampleNamespace> namespaces){
+        drain();
+        List<ExampleNamespace> standbys = new ArrayList<>(namespaces);
+        standbys.remove(source);
+        ReplicationBatch snapshot = snapshotLocked();
+        replicationExecutor.execute(() -> {
+            replicas.keySet().retainAll(standbys);
+            for (ExampleNamespace standby : standbys) {
+                if (!replicas.containsKey(standby)) {
+                    Replica replica = new Replica(standby);
+                    replicas.put(standby, replica);
+                    if (snapshot != null) apply(replica, snapshot);
+                }
+            }
+        });
+        return this;
+    }
+
+    private ReplicationBatch snapshotLocked (){
+        if (source == null) return null;
+        // Taken before reading the values: a change is written to the namespace before getting its number, so
+        // every change up to it is in the snapshot, later ones may be applied twice
+        long sequence = changes.getLastSequence();
+        ReplicationBatch snapshot = new ReplicationBatch(0, true, 64);
+        source.snapshot(snapshot);
+        snapshot.setSnapshotSequence(sequence);
+        return snapshot;
+    }
+
+    /**
+     * Copy the whole state of a namespace into another one, e.g. into the rebuilt instance of a stopped server.
+     */
+    public static void copy (ExampleNamespace from, ExampleNamespace to){
+        ReplicationBatch snapshot = new ReplicationBatch(0, true, 64);
+        from.snapshot(snapshot);
+        to.applyReplicated(snapshot);
+    }
+
+    void onTagWrite (int tag, long bits, long status, long sourceTime, long serverTime){
+        long sequence;
+        while ((sequence = changes.offerTag(tag, bits, status, sourceTime, serverTime)) == 0) {
+            if (!waitForRoom()) return;
+        }
+        if (sequence % maxBatchSize == 0) requestFlush();
+    }
+
+    void onNodeWrite (NodeId nodeId, DataValue value){
+        long sequence;
+        while ((sequence = changes.offerNode(nodeId, value)) == 0) {
+            if (!waitForRoom()) return;
+        }
+        if (sequence % maxBatchSize == 0) requestFlush();
+    }
+
+    /**
+     * Called by a writer finding the buffer full: a change can't be dropped, so it waits for the flush it asks for.
+     * @return false if this replicator is shut down and the change has to be given up
+     */
+    private boolean waitForRoom (){
+        if (stopped) return false;
+        requestFlush();
+        LockSupport.parkNanos(FULL_PARK_NANOS);
+        return true;
+    }
+
+    private void requestFlush (){
+        try {
+            flushExecutor.execute(this::drain);
+        }
+        catch (RejectedExecutionException e) {
+            // Shut down, nothing is replicated anymore
+        }
+    }
+
+    /**
+     * Hand the pending changes to the replication thread.
+     * @return completed once they are applied to every standby
+     */
+    public CompletableFuture<Void> flush (){
+        drain();
+        return CompletableFuture.runAsync(() -> {}, replicationExecutor);
+    }
+
+    private void drain (){
+        synchronized (drainLock) {
+            while (true) {
+                ReplicationBatch full = new ReplicationBatch(changes.getNextDrainSequence(), false, 64);
+                int drained = changes.drain(full, maxBatchSize);
+                if (drained == 0) return;
+                // Submitted while holding the lock, so batches are applied in sequence order
+                replicationExecutor.execute(() -> deliver(full));
+                if (drained < maxBatchSize) return;
+            }
+        }
+    }
+
+    private void deliver (ReplicationBatch batch){
+        for (Replica replica : replicas.values()) {
+            apply(replica, batch);
+        }
+        replicationLag.record(System.nanoTime() - batch.getCreatedNanos());
+    }
+
+    private void apply (Replica replica, ReplicationBatch batch){
+        // Already included in the snapshot the standby started from
+        if (!batch.isSnapshot() && batch.getLastSequence() <= replica.appliedSequence) return;
+
+        long missed = batch.getFirstSequence() - replica.appliedSequence - 1;
+        if (!batch.isSnapshot() && missed > 0) {
+            replica.gapCount += missed;
+            logger.warn("{}: standby missed {} changes before sequence {}", name, missed, batch.getFirstSequence());
+        }
+        try {
+            replica.namespace.applyReplicated(batch);
+            replica.appliedSequence = batch.getLastSequence();
+        }
+        catch (RuntimeException e) {
+            logger.error("{}: can't apply changes {}-{}: {}", name, batch.getFirstSequence(),
+                         batch.getLastSequence(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the sequence number of the last change of the source
+     */
+    public long getLastSequence (){
+        return changes.getLastSequence();
+    }
+
+    /**
+     * @return the number of changes of the source not yet applied to namespace, -1 if it isn't a standby
+     */
+    public long getBacklog (ExampleNamespace namespace){
+        Replica replica = getReplica(namespace);
+        return (replica == null) ? -1 : getLastSequence() - replica.getAppliedSequence();
+    }
+
+    /**
+     * @return the replication state of namespace, null if it isn't a standby
+     */
+    public Replica getReplica (ExampleNamespace namespace){
+        return replicas.get(namespace);
+    }
+
+    /**
+     * @return time from the first change of a batch to its delivery to every standby
+     */
+    public LatencyHistogram getReplicationLag (){
+        return replicationLag;
+    }
+
+    public synchronized void shutdown (){
+        if (source != null) source.setReplicator(null);
+        source = null;
+        stopped = true;
+        flushFuture.cancel(false);
+        flushExecutor.shutdown();
+        replicationExecutor.shutdown();
+    }
+}
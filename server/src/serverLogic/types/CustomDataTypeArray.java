@@ -0,0 +1,261 @@
+package org.eclipse.milo.examples.server.types;
+
+import io.netty.buffer.ByteBuf;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.UaSerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+/**
+ * A struct-of-arrays view of a CustomDataType[]: foo, bar and baz are kept in their own columns, bar as the raw
+ * UInt32 bits. The columns only grow, so an instance can be decoded into over and over without allocating.
+ */
+public class CustomDataTypeArray {
+
+    private String[] foo;
+    private byte[][] fooBytes;
+    private int[] bar;
+    private boolean[] baz;
+    private int size = -1;
+
+    public CustomDataTypeArray() {
+        this(16);
+    }
+
+    public CustomDataTypeArray(int initialCapacity) {
+        foo = new String[initialCapacity];
+        fooBytes = new byte[initialCapacity][];
+        bar = new int[initialCapacity];
+        baz = new boolean[initialCapacity];
+    }
+
+    public static CustomDataTypeArray of(CustomDataType[] values) {
+        CustomDataTypeArray array = new CustomDataTypeArray(values == null ? 0 : values.length);
+        array.setAll(values);
+        return array;
+    }
+
+    public void setAll(CustomDataType[] values) {
+        if (values == null) {
+            size = -1;
+            return;
+        }
+        resize(values.length);
+        for (int i = 0; i < values.length; i++) {
+            set(i, values[i].getFoo(), values[i].getBar().longValue(), values[i].isBaz());
+        }
+    }
+
+    /**
+     * @return the elements as CustomDataType objects, or null for a null array
+     */
+    public CustomDataType[] toArray() {
+        if (size < 0) return null;
+        CustomDataType[] values = new CustomDataType[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = new CustomDataType(foo[i], uint(getBar(i)), baz[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Sets the length of the array, keeping the elements below it. A negative length makes it a null array.
+     */
+    public void resize(int length) {
+        if (length > bar.length) {
+            int capacity = Math.max(length, bar.length * 2);
+            foo = Arrays.copyOf(foo, capacity);
+            fooBytes = Arrays.copyOf(fooBytes, capacity);
+            bar = Arrays.copyOf(bar, capacity);
+            baz = Arrays.copyOf(baz, capacity);
+        }
+        size = length;
+    }
+
+    public void set(int index, String foo, long bar, boolean baz) {
+        checkIndex(index);
+        if (!Objects.equals(this.foo[index], foo)) {
+            this.foo[index] = foo;
+            this.fooBytes[index] = null;
+        }
+        this.bar[index] = (int) bar;
+        this.baz[index] = baz;
+    }
+
+    public boolean isNull() {
+        return size < 0;
+    }
+
+    public int size() {
+        return Math.max(size, 0);
+    }
+
+    public String getFoo(int index) {
+        checkIndex(index);
+        return foo[index];
+    }
+
+    /**
+     * @return the UInt32 value of bar, without boxing it in a UInteger
+     */
+    public long getBar(int index) {
+        checkIndex(index);
+        return bar[index] & 0xFFFFFFFFL;
+    }
+
+    public boolean isBaz(int index) {
+        checkIndex(index);
+        return baz[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size());
+        }
+    }
+
+    private byte[] fooBytes(int index) {
+        byte[] bytes = fooBytes[index];
+        if (bytes == null && foo[index] != null) {
+            bytes = fooBytes[index] = foo[index].getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    /**
+     * Encodes and decodes a CustomDataType[] with the OPC UA binary layout of an array of the structure (the Int32
+     * length, -1 for null, followed by the Foo, Bar and Baz fields of each element), straight against the buffer.
+     * <p>
+     * The UTF-8 form of every Foo is cached in the array, and a decoded Foo whose bytes did not change keeps the
+     * String already there, so decoding the same array over and over does not allocate. A codec keeps a scratch
+     * buffer and must not be shared between threads.
+     */
+    public static class Codec {
+
+        public static final int DEFAULT_MAX_ARRAY_LENGTH = 1 << 20;
+
+        // Int32 length of Foo, UInt32 Bar and Boolean Baz
+        private static final int MIN_ELEMENT_SIZE = 9;
+
+        private final int maxArrayLength;
+        private byte[] scratch = new byte[64];
+
+        public Codec() {
+            this(DEFAULT_MAX_ARRAY_LENGTH);
+        }
+
+        public Codec(int maxArrayLength) {
+            this.maxArrayLength = maxArrayLength;
+        }
+
+        public void encode(ByteBuf buffer, CustomDataTypeArray array) {
+            if (array.isNull()) {
+                buffer.writeIntLE(-1);
+                return;
+            }
+            int size = array.size();
+            checkLength(size);
+            buffer.writeIntLE(size);
+            for (int i = 0; i < size; i++) {
+                byte[] foo = array.fooBytes(i);
+                if (foo == null) {
+                    buffer.writeIntLE(-1);
+                } else {
+                    buffer.writeIntLE(foo.length);
+                    buffer.writeBytes(foo);
+                }
+                buffer.writeIntLE(array.bar[i]);
+                buffer.writeBoolean(array.baz[i]);
+            }
+        }
+
+        /**
+         * Encodes the objects with the same layout, reading Bar without going through its UInteger value.
+         */
+        public void encode(ByteBuf buffer, CustomDataType[] values) {
+            if (values == null) {
+                buffer.writeIntLE(-1);
+                return;
+            }
+            checkLength(values.length);
+            buffer.writeIntLE(values.length);
+            for (CustomDataType value : values) {
+                String foo = value.getFoo();
+                if (foo == null) {
+                    buffer.writeIntLE(-1);
+                } else {
+                    int lengthIndex = buffer.writerIndex();
+                    buffer.writeIntLE(0);
+                    int length = buffer.writeCharSequence(foo, StandardCharsets.UTF_8);
+                    buffer.setIntLE(lengthIndex, length);
+                }
+                buffer.writeIntLE(value.getBar().intValue());
+                buffer.writeBoolean(value.isBaz());
+            }
+        }
+
+        /**
+         * Decodes into the given array, growing its columns only when the decoded array is longer than them.
+         */
+        public CustomDataTypeArray decode(ByteBuf buffer, CustomDataTypeArray into) {
+            int length = buffer.readIntLE();
+            if (length < 0) {
+                into.resize(-1);
+                return into;
+            }
+            checkLength(length);
+            if ((long) length * MIN_ELEMENT_SIZE > buffer.readableBytes()) {
+                throw new UaSerializationException(StatusCodes.Bad_DecodingError,
+                    "array length " + length + " exceeds the " + buffer.readableBytes() + " readable bytes");
+            }
+            into.resize(length);
+            for (int i = 0; i < length; i++) {
+                decodeFoo(buffer, into, i);
+                into.bar[i] = buffer.readIntLE();
+                into.baz[i] = buffer.readByte() != 0;
+            }
+            return into;
+        }
+
+        public CustomDataType[] decode(ByteBuf buffer) {
+            return decode(buffer, new CustomDataTypeArray()).toArray();
+        }
+
+        private void decodeFoo(ByteBuf buffer, CustomDataTypeArray into, int index) {
+            int length = buffer.readIntLE();
+            if (length < 0) {
+                into.foo[index] = null;
+                into.fooBytes[index] = null;
+                return;
+            }
+            if (length > buffer.readableBytes()) {
+                throw new UaSerializationException(StatusCodes.Bad_DecodingError,
+                    "string length " + length + " exceeds the " + buffer.readableBytes() + " readable bytes");
+            }
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.readBytes(scratch, 0, length);
+
+            byte[] cached = into.fooBytes(index);
+            if (cached != null && Arrays.equals(cached, 0, cached.length, scratch, 0, length)) {
+                return;
+            }
+            byte[] bytes = Arrays.copyOf(scratch, length);
+            into.fooBytes[index] = bytes;
+            into.foo[index] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private void checkLength(int length) {
+            if (length > maxArrayLength) {
+                throw new UaSerializationException(StatusCodes.Bad_EncodingLimitsExceeded,
+                    "array length " + length + " exceeds the maximum of " + maxArrayLength);
+            }
+        }
+    }
+
+}
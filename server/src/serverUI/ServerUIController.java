@@ -1,6 +1,7 @@
 package serverUI;
 
 import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.Alert;
@@ -9,17 +10,22 @@ import javafx.scene.control.TextField;
 import javafx.scene.paint.Paint;
 import javafx.scene.shape.Shape;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.ServerState;
-import serverLogic.RedundantServer;
 import serverLogic.RedundantServerSet;
+import serverLogic.StatusSnapshotPublisher;
 
 import java.net.URL;
+import java.util.Objects;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class ServerUIController implements Initializable{
     public final String NO_DATA_VALUE = "No data!";
 
-    private RedundantServerSet serverSet;
-    private boolean setIsRunning = false;
+    private volatile RedundantServerSet serverSet;
+    private volatile StatusSnapshotPublisher statusPublisher;
+    private StatusSnapshotPublisher.Snapshot shown;
+    private volatile boolean setIsRunning = false;
 
     @FXML
     private Label lblMasterServerID;
@@ -37,24 +43,40 @@ public class ServerUIController implements Initializable{
     private Shape statusLedSecondary;
 
     public void startServerSet (){
-        new Thread(() -> {
+        // Building the set loads the key stores, so keep it off the FX thread; running it needs no thread at all
+        CompletableFuture.supplyAsync(() -> {
             try {
-                serverSet = new RedundantServerSet(3);
-                setIsRunning = true;
-                serverSet.run();
+                return new RedundantServerSet(3);
             }
             catch (Exception e){
-                Alert exceptionAlert = new Alert(Alert.AlertType.ERROR);
-                exceptionAlert.setTitle("Exception " + e);
-                exceptionAlert.setContentText("An error happens running the redundant server set.\n" +
-                        "Message: " + e.getLocalizedMessage());
-                exceptionAlert.setHeaderText("Error occourred");
+                throw new CompletionException(e);
             }
-        }).start();
+        }).thenCompose(set -> {
+            serverSet = set;
+            statusPublisher = StatusSnapshotPublisher.fromSystemProperties(set).start();
+            setIsRunning = true;
+            return set.start();
+        }).whenComplete((v, ex) -> {
+            setIsRunning = false;
+            // The set may stop on its own, not only through stopServerSet; the last snapshot stays shown
+            StatusSnapshotPublisher publisher = statusPublisher;
+            if (publisher != null) publisher.shutdown();
+            if (ex != null) Platform.runLater(() -> showError(ex.getCause() != null ? ex.getCause() : ex));
+        });
+    }
+
+    private void showError (Throwable e){
+        Alert exceptionAlert = new Alert(Alert.AlertType.ERROR);
+        exceptionAlert.setTitle("Exception " + e);
+        exceptionAlert.setContentText("An error happens running the redundant server set.\n" +
+                "Message: " + e.getLocalizedMessage());
+        exceptionAlert.setHeaderText("Error occourred");
+        exceptionAlert.show();
     }
 
     public void stopServerSet (){
         setIsRunning = false;
+        if (statusPublisher != null) statusPublisher.shutdown();
         serverSet.shutdown();
     }
 
@@ -70,6 +92,7 @@ public class ServerUIController implements Initializable{
     }
 
     private Paint getServerStateColor (ServerState state){
+        if (state == null) return Paint.valueOf("#000000");
         switch (state){
             case Running:
                 return Paint.valueOf("#00ee00");
@@ -92,16 +115,33 @@ public class ServerUIController implements Initializable{
         }
     }
 
+    /**
+     * Show the latest status snapshot, touching only the controls whose value changed since the last one shown.
+     */
     public void updateGUI(){
-        if (serverSet != null){
-            RedundantServer master = serverSet.getCurrentServer();
-            RedundantServer secondary = serverSet.getCurrentClient();
-            txtDataValue.setText(master.getAnalogValue().toString());
-            lblMasterServerID.textProperty().setValue(master.getServerId());
-            lblSecondServerID.textProperty().setValue(secondary.getServerId());
-            statusLedMain.fillProperty().setValue(getServerStateColor(master.getServerState()));
-            statusLedSecondary.fillProperty().setValue(getServerStateColor(secondary.getServerState()));
+        StatusSnapshotPublisher publisher = statusPublisher;
+        if (publisher == null) return;
+        StatusSnapshotPublisher.Snapshot snapshot = publisher.getLatest();
+        if (snapshot == shown || snapshot.getSequence() == 0) return;
+
+        StatusSnapshotPublisher.Snapshot previous = (shown != null) ? shown : snapshot;
+        boolean first = (shown == null);
+        if (first || !Objects.equals(snapshot.getAnalogValue(), previous.getAnalogValue())) {
+            txtDataValue.setText(snapshot.getAnalogValue() != null ? snapshot.getAnalogValue().toString() : NO_DATA_VALUE);
+        }
+        if (first || !Objects.equals(snapshot.getMasterId(), previous.getMasterId())) {
+            lblMasterServerID.textProperty().setValue(snapshot.getMasterId());
+        }
+        if (first || !Objects.equals(snapshot.getSecondaryId(), previous.getSecondaryId())) {
+            lblSecondServerID.textProperty().setValue(snapshot.getSecondaryId());
+        }
+        if (first || snapshot.getMasterState() != previous.getMasterState()) {
+            statusLedMain.fillProperty().setValue(getServerStateColor(snapshot.getMasterState()));
+        }
+        if (first || snapshot.getSecondaryState() != previous.getSecondaryState()) {
+            statusLedSecondary.fillProperty().setValue(getServerStateColor(snapshot.getSecondaryState()));
         }
+        shown = snapshot;
     }
 
     public boolean isServerRunning (){